@@ -0,0 +1,122 @@
+-- Query-time comparison for migration V2__ship_filter_indexes.sql on 1,000,000 ships.
+--
+-- Runs against a scratch schema on MySQL 8.0, never against cosmoport itself:
+--   mysql -uroot -p < db/benchmark/ship_filter_indexes.sql
+-- On MariaDB replace cte_max_recursion_depth with max_recursive_iterations.
+--
+-- Every query is the SQL Hibernate generates for getPredicates/ShipOrder, executed
+-- 20 times before and after the migration; the last SELECT prints the average
+-- milliseconds per execution side by side.
+
+CREATE DATABASE IF NOT EXISTS cosmoport_bench COLLATE utf8_general_ci;
+USE cosmoport_bench;
+
+DROP TABLE IF EXISTS ship;
+DROP TABLE IF EXISTS bench_result;
+DROP PROCEDURE IF EXISTS bench;
+
+-- V1 layout
+CREATE TABLE ship
+(
+    id       BIGINT(20)  NOT NULL AUTO_INCREMENT,
+    name     VARCHAR(50) NULL,
+    planet   VARCHAR(50) NULL,
+    shipType VARCHAR(9)  NULL,
+    prodDate date        NULL,
+    isUsed   BIT(1)      NULL,
+    speed    DOUBLE      NULL,
+    crewSize INT(4)      NULL,
+    rating   DOUBLE      NULL,
+    PRIMARY KEY (id)
+)
+    ENGINE = InnoDB
+    DEFAULT CHARACTER SET = utf8;
+
+SET SESSION cte_max_recursion_depth = 1000000;
+
+INSERT INTO ship(name, planet, shipType, prodDate, isUsed, speed, crewSize)
+WITH RECURSIVE seq(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < 1000000)
+SELECT CONCAT('Ship ', n),
+       ELT(1 + n % 8, 'Mercury', 'Venus', 'Earth', 'Mars', 'Jupiter', 'Saturn', 'Uranus', 'Neptune'),
+       ELT(1 + n % 3, 'TRANSPORT', 'MILITARY', 'MERCHANT'),
+       MAKEDATE(2800 + (n * 7) % 220, 1),
+       n % 2,
+       0.01 + ((n * 37) % 99) / 100,
+       1 + (n * 13) % 9999
+FROM seq;
+
+UPDATE ship
+SET rating = ROUND(80 * speed * IF(isUsed, 0.5, 1) / (3019 - YEAR(prodDate) + 1), 2);
+
+ANALYZE TABLE ship;
+
+CREATE TABLE bench_result
+(
+    phase  VARCHAR(6),
+    label  VARCHAR(40),
+    avg_ms DOUBLE
+);
+
+DELIMITER //
+CREATE PROCEDURE bench(IN p_phase VARCHAR(6), IN p_label VARCHAR(40), IN p_query TEXT)
+BEGIN
+    DECLARE i INT DEFAULT 0;
+    DECLARE started DATETIME(6);
+    SET @bench_query = CONCAT('SELECT COUNT(*) INTO @ignored FROM (', p_query, ') bench_q');
+    PREPARE stmt FROM @bench_query;
+    EXECUTE stmt;
+    SET started = NOW(6);
+    WHILE i < 20 DO
+        EXECUTE stmt;
+        SET i = i + 1;
+    END WHILE;
+    INSERT INTO bench_result
+    VALUES (p_phase, p_label, TIMESTAMPDIFF(MICROSECOND, started, NOW(6)) / 20 / 1000);
+    DEALLOCATE PREPARE stmt;
+END//
+
+DROP PROCEDURE IF EXISTS bench_all//
+CREATE PROCEDURE bench_all(IN p_phase VARCHAR(6))
+BEGIN
+    CALL bench(p_phase, 'count type+isUsed',
+               'SELECT COUNT(id) FROM ship WHERE shipType = ''MILITARY'' AND isUsed = 0');
+    CALL bench(p_phase, 'list type+isUsed order RATING',
+               'SELECT * FROM ship WHERE shipType = ''MERCHANT'' AND isUsed = 1 ORDER BY rating, id LIMIT 20');
+    CALL bench(p_phase, 'list speed range order SPEED',
+               'SELECT * FROM ship WHERE speed >= 0.30 AND speed <= 0.32 ORDER BY speed, id LIMIT 20');
+    CALL bench(p_phase, 'list prodDate range order DATE',
+               'SELECT * FROM ship WHERE prodDate >= ''3000-01-01'' AND prodDate <= ''3001-01-01'' ORDER BY prodDate, id LIMIT 20');
+    CALL bench(p_phase, 'count crewSize range',
+               'SELECT COUNT(id) FROM ship WHERE crewSize >= 100 AND crewSize <= 200');
+    CALL bench(p_phase, 'list order RATING deep offset',
+               'SELECT * FROM ship ORDER BY rating, id LIMIT 500000, 20');
+    CALL bench(p_phase, 'list order RATING keyset seek',
+               'SELECT * FROM ship WHERE rating > 2.5 OR (rating = 2.5 AND id > 500000) ORDER BY rating, id LIMIT 20');
+END//
+DELIMITER ;
+
+CALL bench_all('before');
+
+-- V2__ship_filter_indexes.sql
+ALTER TABLE ship
+    MODIFY shipType ENUM ('TRANSPORT', 'MILITARY', 'MERCHANT') NULL;
+CREATE INDEX ship_speed_idx ON ship (speed);
+CREATE INDEX ship_prod_date_idx ON ship (prodDate);
+CREATE INDEX ship_rating_idx ON ship (rating);
+CREATE INDEX ship_crew_size_idx ON ship (crewSize);
+CREATE INDEX ship_type_used_rating_idx ON ship (shipType, isUsed, rating);
+ANALYZE TABLE ship;
+
+CALL bench_all('after');
+
+SELECT b.label,
+       ROUND(b.avg_ms, 2)            AS before_ms,
+       ROUND(a.avg_ms, 2)            AS after_ms,
+       ROUND(b.avg_ms / a.avg_ms, 1) AS speedup
+FROM bench_result b
+         JOIN bench_result a ON a.label = b.label AND a.phase = 'after'
+WHERE b.phase = 'before';
+
+SELECT table_name, ROUND(data_length / 1024 / 1024) AS data_mb, ROUND(index_length / 1024 / 1024) AS index_mb
+FROM information_schema.tables
+WHERE table_schema = 'cosmoport_bench' AND table_name = 'ship';
@@ -0,0 +1,133 @@
+package com.space.controller;
+
+import com.space.config.AppConfig;
+import com.space.config.WebConfig;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.QueryExecutor;
+import com.space.service.ShipService;
+import com.space.util.ShipUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/*
+ * Load test of the list and count endpoints with more clients than query threads: every request
+ * goes through the dispatcher and, for "platform" and "virtual", the Prefer: respond-async handlers
+ * and the query executor, and runs its queries against the dev (embedded H2) database filled with
+ * `rows` ships. "sync" is the plain handler on the client's thread, for comparison. The result and
+ * query caches are off so that every request reaches the database. "virtual" needs Java 21 or
+ * later and fails its setup on older JDKs. The number of clients is JMH's -t (default 64):
+ *     mvn -Pjmh test-compile exec:exec -Djmh.args="AsyncEndpoint -t 64"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class AsyncEndpointBenchmark {
+    private static final String LIST = "/rest/ships?planet=Earth&minSpeed=0.3&order=SPEED&pageSize=20";
+    private static final String COUNT = "/rest/ships/count?planet=Earth&minSpeed=0.3";
+    private static final String[] PLANETS = {"Earth", "Mars", "Jupiter", "Saturn", "Venus", "Neptune", "Pluto"};
+
+    @Param({"sync", "platform", "virtual"})
+    public String threads;
+
+    // query threads, or the semaphore permits of virtual threads
+    @Param({"20"})
+    public int concurrency;
+
+    @Param({"10000"})
+    public int rows;
+
+    private AnnotationConfigWebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cosmoport.async.virtual-threads", threads.equals("virtual"));
+        properties.put("cosmoport.async.threads", concurrency);
+        properties.put("cosmoport.pool.maximum-pool-size", concurrency);
+        properties.put("cosmoport.async.queue-capacity", 1000);
+        properties.put("cosmoport.result-cache.enabled", false);
+        properties.put("cosmoport.coalescing.enabled", false);
+
+        context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.getEnvironment().setActiveProfiles("dev");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(AppConfig.class, WebConfig.class);
+        context.refresh();
+        if (threads.equals("virtual") && !context.getBean(QueryExecutor.class).isThreadPerTask()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later");
+        }
+
+        Random random = new Random(42);
+        List<Ship> ships = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Ship ship = new Ship();
+            ship.setName("Ship " + i);
+            ship.setPlanet(PLANETS[random.nextInt(PLANETS.length)]);
+            ship.setShipType(ShipType.values()[random.nextInt(ShipType.values().length)]);
+            // 2800 to 3019
+            ship.setProdDate(new Date(26192246400000L + (long) (random.nextDouble() * 6910963200000L)));
+            ship.setIsUsed(random.nextBoolean());
+            ship.setSpeed(Math.round((0.01 + random.nextDouble() * 0.98) * 100) / 100.0);
+            ship.setCrewSize(1 + random.nextInt(9999));
+            ship.setRating(ShipUtil.calculateRating(ship.getSpeed(), ship.getProdDate(), ship.getIsUsed()));
+            ships.add(ship);
+        }
+        context.getBean(ShipService.class).createAll(ships);
+
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private String perform(String url) throws Exception {
+        MvcResult result;
+        if (threads.equals("sync")) {
+            result = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8)).andReturn();
+        } else {
+            MvcResult started = mockMvc.perform(get(url).header("Prefer", "respond-async")
+                    .accept(MediaType.APPLICATION_JSON_UTF8)).andReturn();
+            started.getAsyncResult(60000);
+            result = mockMvc.perform(asyncDispatch(started)).andReturn();
+        }
+        int status = result.getResponse().getStatus();
+        if (status != 200) throw new IllegalStateException(url + " answered " + status);
+        return result.getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String list() throws Exception {
+        return perform(LIST);
+    }
+
+    @Benchmark
+    public String count() throws Exception {
+        return perform(COUNT);
+    }
+}
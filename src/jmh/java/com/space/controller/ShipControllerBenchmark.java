@@ -0,0 +1,112 @@
+package com.space.controller;
+
+import com.space.config.AppConfig;
+import com.space.model.ShipOrder;
+import com.space.model.ShipType;
+import com.space.service.ShipFilter;
+import com.space.service.ShipLeaderboard;
+import com.space.service.ShipQueryShapes;
+import com.space.service.ShipSort;
+import com.space.service.ShipView;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * checkInputData runs on every create/update, building the list/count query on every list/count
+ * request. Queries come from the dev (embedded H2) context, so no database server is needed; they are
+ * created inside one open transaction and never executed, except for the top ships query that
+ * the leaderboard is compared with.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShipControllerBenchmark {
+    private AnnotationConfigApplicationContext context;
+    private ShipController controller;
+    private ShipQueryShapes queryShapes;
+    private ShipLeaderboard leaderboard;
+    private PlatformTransactionManager transactionManager;
+    private TransactionStatus transaction;
+    private ShipUI shipUI;
+    private ShipFilter emptyFilter;
+    private ShipFilter fullFilter;
+    private ShipFilter partitionFilter;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().setActiveProfiles("dev");
+        context.register(AppConfig.class);
+        context.refresh();
+
+        controller = new ShipController();
+        queryShapes = context.getBean(ShipQueryShapes.class);
+        leaderboard = context.getBean(ShipLeaderboard.class);
+        transactionManager = context.getBean(PlatformTransactionManager.class);
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        definition.setReadOnly(true);
+        transaction = transactionManager.getTransaction(definition);
+
+        shipUI = new ShipUI();
+        shipUI.name = "Orion III";
+        shipUI.planet = "Mars";
+        shipUI.shipType = ShipType.MERCHANT;
+        shipUI.prodDate = 32998274577071L;
+        shipUI.isUsed = true;
+        shipUI.speed = 0.82;
+        shipUI.crewSize = 617;
+
+        emptyFilter = new ShipFilter(null, null, null, null, null, null, null, null, null, null, null, null);
+        fullFilter = new ShipFilter("ri", "ar", ShipType.MILITARY.name(), 26192246400000L, 33134745600000L,
+                false, 0.1, 0.9, 10, 2000, 0.5, 5.0);
+        partitionFilter = new ShipFilter(null, null, ShipType.MILITARY.name(), null, null, false,
+                null, null, null, null, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        transactionManager.rollback(transaction);
+        context.close();
+    }
+
+    @Benchmark
+    public ShipUI checkInputData() throws EmptyFieldsException {
+        controller.checkInputData(shipUI, true);
+        return shipUI;
+    }
+
+    @Benchmark
+    public TypedQuery<ShipView> listQueryEmptyFilter() {
+        return queryShapes.listQuery(emptyFilter, null, ShipSort.ID, null);
+    }
+
+    @Benchmark
+    public TypedQuery<ShipView> listQueryFullFilter() {
+        return queryShapes.listQuery(fullFilter, null, ShipSort.of(ShipOrder.RATING), null);
+    }
+
+    @Benchmark
+    public TypedQuery<Long> countQueryFullFilter() {
+        return queryShapes.countQuery(fullFilter, null);
+    }
+
+    @Benchmark
+    public List<ShipView> topFromLeaderboard() {
+        return leaderboard.top(ShipType.MILITARY.name(), false, 10);
+    }
+
+    @Benchmark
+    public List<ShipView> topFromDatabase() {
+        return queryShapes.listQuery(partitionFilter, null, ShipLeaderboard.BEST, null).setMaxResults(10).getResultList();
+    }
+}
@@ -0,0 +1,69 @@
+package com.space.controller;
+
+import com.space.config.WebConfig;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Response bodies written through the same converter WebConfig registers for the REST endpoints.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShipSerializationBenchmark {
+    @Param({"3", "20"})
+    private int pageSize;
+
+    private MappingJackson2HttpMessageConverter converter;
+    private ShipUI shipUI;
+    private List<Ship> ships;
+
+    @Setup
+    public void setUp() {
+        List<HttpMessageConverter<?>> converters = new ArrayList<>();
+        new WebConfig().configureMessageConverters(converters);
+        converter = (MappingJackson2HttpMessageConverter) converters.get(0);
+
+        ships = new ArrayList<>();
+        for (int i = 1; i <= pageSize; i++) {
+            Ship ship = new Ship();
+            ship.setId((long) i);
+            ship.setName("Ship " + i);
+            ship.setPlanet("Planet " + i);
+            ship.setShipType(ShipType.values()[i % ShipType.values().length]);
+            ship.setProdDate(new Date(32998274577071L + i * 86400000L));
+            ship.setIsUsed(i % 2 == 0);
+            ship.setSpeed(0.5 + i / 100.0);
+            ship.setCrewSize(100 + i);
+            ship.setRating(1.5 + i / 10.0);
+            ships.add(ship);
+        }
+        shipUI = new ShipUI(ships.get(0));
+    }
+
+    @Benchmark
+    public byte[] writeShipUI() throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(shipUI, MediaType.APPLICATION_JSON, message);
+        return message.getBodyAsBytes();
+    }
+
+    @Benchmark
+    public byte[] writeShipList() throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(ships, MediaType.APPLICATION_JSON, message);
+        return message.getBodyAsBytes();
+    }
+}
@@ -0,0 +1,68 @@
+package com.space.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Bursts of async requests against the query executor, each holding its thread for a simulated
+ * database round trip: the platform thread pool against virtual threads behind a semaphore of
+ * the same size. "virtual" needs Java 21 or later and fails its setup on older JDKs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryExecutorBenchmark {
+    private static final int BURST = 1000;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    // the connection pool size the semaphore is sized to
+    @Param({"20", "100"})
+    public int concurrency;
+
+    @Param({"1000"})
+    public long queryMicros;
+
+    private QueryExecutor executor;
+
+    @Setup
+    public void setUp() {
+        if (threads.equals("virtual")) {
+            ExecutorService virtualThreads = QueryExecutor.newVirtualThreadPerTaskExecutor();
+            if (virtualThreads == null) throw new IllegalStateException("Virtual threads need Java 21 or later");
+            executor = new QueryExecutor(virtualThreads, concurrency, BURST, 60000);
+        } else {
+            executor = new QueryExecutor(concurrency, BURST, 60000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BURST);
+        long nanos = TimeUnit.MICROSECONDS.toNanos(queryMicros);
+        for (int i = 0; i < BURST; i++) {
+            executor.submit(() -> {
+                try {
+                    LockSupport.parkNanos(nanos);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,56 @@
+package com.space.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShipUtilBenchmark {
+    private static final int BATCH = 1024;
+
+    private Date prodDate;
+    private long millis;
+    private final double[] speeds = new double[BATCH];
+    private final int[] years = new int[BATCH];
+    private final boolean[] used = new boolean[BATCH];
+    private final double[] ratings = new double[BATCH];
+
+    @Setup
+    public void setUp() {
+        millis = new Date(1000L * 3600 * 24 * 365 * 1000).getTime();
+        prodDate = new Date(millis);
+        for (int i = 0; i < BATCH; i++) {
+            speeds[i] = 0.01 + (i % 99) / 100.0;
+            years[i] = 2800 + i % 220;
+            used[i] = i % 3 == 0;
+        }
+    }
+
+    @Benchmark
+    public double calculateRating() {
+        return ShipUtil.calculateRating(0.57, prodDate, true);
+    }
+
+    @Benchmark
+    public Date getFirstDayOfYear() {
+        return ShipUtil.getFirstDayOfYear(millis);
+    }
+
+    @Benchmark
+    public int getYear() {
+        return ShipUtil.getYear(millis);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] calculateRatings() {
+        ShipUtil.calculateRatings(speeds, years, used, ratings);
+        return ratings;
+    }
+}
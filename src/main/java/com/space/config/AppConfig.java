@@ -1,26 +1,60 @@
 package com.space.config;
 
 import com.space.controller.ShipController;
+import com.space.datasource.ReplicaRoutingDataSource;
+import com.space.metrics.ConnectionPoolMetrics;
+import com.space.metrics.HibernateCacheStatistics;
+import com.space.metrics.MethodTimingPostProcessor;
+import com.space.metrics.MetricsRegistry;
+import com.space.repository.ShipRepository;
+import com.space.service.QueryExecutor;
+import com.space.service.ShipService;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.flywaydb.core.Flyway;
+import org.hibernate.cache.spi.RegionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.EnableMBeanExport;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jmx.export.MBeanExporter;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.JpaVendorAdapter;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 import static org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType.H2;
 
@@ -28,7 +62,15 @@ import static org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType.
 @EnableTransactionManagement
 @ComponentScan("com.space.service")
 @EnableJpaRepositories(basePackages = "com.space.repository")
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
+@PropertySource("classpath:application.properties")
 public class AppConfig {
+    private Environment env;
+
+    @Autowired
+    public void setEnv(Environment env) {
+        this.env = env;
+    }
 
     @Bean(name = "logger")
     public Logger getLogger() {
@@ -38,8 +80,21 @@ public class AppConfig {
 
 
 
-    @Bean
+    // the schema has to be migrated before Hibernate starts using it
+    @Profile("prod")
+    @Bean(name = "entityManagerFactory")
+    @DependsOn("flyway")
     public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+        return createEntityManagerFactory();
+    }
+
+    @Profile("dev")
+    @Bean(name = "entityManagerFactory")
+    public LocalContainerEntityManagerFactoryBean entityManagerFactoryForTests() {
+        return createEntityManagerFactory();
+    }
+
+    private LocalContainerEntityManagerFactoryBean createEntityManagerFactory() {
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
         em.setDataSource(dataSource());
         em.setPackagesToScan("com.space.model");
@@ -51,15 +106,170 @@ public class AppConfig {
         return em;
     }
 
-    @Profile("prod")
+    /*
+     * Heap caches backing Hibernate's second-level cache: the Ship entity region, the query results
+     * region and the update timestamps the query cache checks results against. The timestamps must
+     * never expire or be evicted before the results, so that region is unbounded in time.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        ConfigurationBuilder config = ConfigurationBuilder.newConfigurationBuilder()
+                .withCache("ship", cacheConfiguration("ship", 10000, 300))
+                .withCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, cacheConfiguration("query", 2000, 60))
+                .withCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                        CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                                ResourcePoolsBuilder.heap(1000)).build());
+        // a URI of its own, so every application context gets a separate manager
+        URI uri = URI.create("urn:cosmoport:hibernate-cache:" + System.identityHashCode(this));
+        return provider.getCacheManager(uri, config.build());
+    }
+
+    private CacheConfiguration<Object, Object> cacheConfiguration(String region, long defaultEntries, long defaultTtlSeconds) {
+        String prefix = "cosmoport.hibernate-cache." + region;
+        long entries = env.getProperty(prefix + ".max-entries", Long.class, defaultEntries);
+        long ttl = env.getProperty(prefix + ".ttl-seconds", Long.class, defaultTtlSeconds);
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(entries))
+                .withExpiry(ttl > 0 ? ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttl))
+                        : ExpiryPolicyBuilder.noExpiration())
+                .build();
+    }
+
+    @Bean
+    public HibernateCacheStatistics hibernateCacheStatistics(EntityManagerFactory emf) {
+        return new HibernateCacheStatistics(emf);
+    }
+
+    @Bean
+    public static MetricsRegistry metricsRegistry(ObjectProvider<MBeanExporter> exporter) {
+        return new MetricsRegistry(exporter);
+    }
+
+    // static, as a BeanPostProcessor has to exist before the beans it processes
+    @Bean
+    public static MethodTimingPostProcessor methodTimingPostProcessor(MetricsRegistry metricsRegistry) {
+        return new MethodTimingPostProcessor(metricsRegistry, Arrays.asList(ShipService.class, ShipRepository.class));
+    }
+
     @Bean
+    public ConnectionPoolMetrics connectionPoolMetrics() {
+        return new ConnectionPoolMetrics();
+    }
+
+    /*
+     * Threads for the async list/count/get handlers; more than the pool's connections would only wait
+     * for one. With virtual threads every query gets a thread of its own, and as many run at once as
+     * the primary pool has connections.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public QueryExecutor queryExecutor() {
+        int queueCapacity = env.getProperty("cosmoport.async.queue-capacity", Integer.class, 100);
+        long timeout = env.getProperty("cosmoport.async.timeout-ms", Long.class, 10000L);
+        if (env.getProperty("cosmoport.async.virtual-threads", Boolean.class, false)) {
+            ExecutorService virtualThreads = QueryExecutor.newVirtualThreadPerTaskExecutor();
+            if (virtualThreads != null) {
+                return new QueryExecutor(virtualThreads,
+                        env.getProperty("cosmoport.pool.maximum-pool-size", Integer.class, 20), queueCapacity, timeout);
+            }
+        }
+        return new QueryExecutor(env.getProperty("cosmoport.async.threads", Integer.class, 20), queueCapacity, timeout);
+    }
+
+    /*
+     * The primary pool plus one pool per cosmoport.replicas.urls entry. Without replicas the
+     * primary pool is the application's DataSource as before.
+     */
+    @Profile("prod")
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource routingDataSource() {
+        ConnectionPoolMetrics metrics = connectionPoolMetrics();
+        HikariDataSource primary = pool("cosmoport", env.getProperty("cosmoport.datasource.url",
+                "jdbc:mysql://localhost:3306/cosmoport?serverTimezone=UTC"), false, metrics);
+        metrics.setMaximumPoolSize(primary.getMaximumPoolSize());
+
+        List<String> urls = new ArrayList<>();
+        for (String url : env.getProperty("cosmoport.replicas.urls", String[].class, new String[0])) {
+            if (!url.trim().isEmpty()) urls.add(url.trim());
+        }
+        if (!urls.isEmpty()) checkNoReadThroughCaches(env);
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls) replicas.add(pool("cosmoport-replica-" + (replicas.size() + 1), url, true, null));
+        return new ReplicaRoutingDataSource(primary, replicas,
+                ReplicaRoutingDataSource.Policy.parse(env.getProperty("cosmoport.replicas.policy", "round-robin")),
+                env.getProperty("cosmoport.replicas.read-your-writes", Boolean.class, true),
+                env.getProperty("cosmoport.replicas.health-check-interval-ms", Long.class, 5000L),
+                env.getProperty("cosmoport.replicas.health-check-timeout-seconds", Integer.class, 2));
+    }
+
+    /*
+     * A write clears the caches after its commit, but the next request from another client is not
+     * pinned to the primary: reading a lagging replica, it would put the data from before the write
+     * back into them. Snapshots kept in memory (index, aggregates, leaderboard) read the primary.
+     */
+    static void checkNoReadThroughCaches(Environment env) {
+        List<String> enabled = new ArrayList<>();
+        for (String cache : new String[]{"ship-cache", "result-cache", "hibernate-cache"}) {
+            if (env.getProperty("cosmoport." + cache + ".enabled", Boolean.class, true)) enabled.add(cache);
+        }
+        if (!enabled.isEmpty()) {
+            throw new IllegalStateException("cosmoport.replicas.urls is set: disable " + enabled +
+                    " (cosmoport.<cache>.enabled=false), replica reads must not fill them");
+        }
+    }
+
+    // routing needs the read-only flag, which is set after the transaction has asked for its connection
+    @Profile("prod")
+    @Bean(destroyMethod = "")
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        dataSource.setUrl("jdbc:mysql://localhost:3306/cosmoport?serverTimezone=UTC");
-        dataSource.setUsername("root");
-        dataSource.setPassword("root");
-        return dataSource;
+        ReplicaRoutingDataSource routing = routingDataSource();
+        return routing.hasReplicas() ? new LazyConnectionDataSourceProxy(routing) : routing.getPrimary();
+    }
+
+    private HikariDataSource pool(String poolName, String url, boolean readOnly, ConnectionPoolMetrics metrics) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDriverClassName(env.getProperty("cosmoport.datasource.driver", "com.mysql.cj.jdbc.Driver"));
+        config.setJdbcUrl(url);
+        config.setUsername(env.getProperty("cosmoport.datasource.username", "root"));
+        config.setPassword(env.getProperty("cosmoport.datasource.password", "root"));
+        config.setReadOnly(readOnly);
+
+        config.setMinimumIdle(env.getProperty("cosmoport.pool.minimum-idle", Integer.class, 5));
+        config.setMaximumPoolSize(env.getProperty("cosmoport.pool.maximum-pool-size", Integer.class, 20));
+        config.setConnectionTimeout(env.getProperty("cosmoport.pool.connection-timeout-ms", Long.class, 30000L));
+        config.setIdleTimeout(env.getProperty("cosmoport.pool.idle-timeout-ms", Long.class, 600000L));
+        config.setMaxLifetime(env.getProperty("cosmoport.pool.max-lifetime-ms", Long.class, 1800000L));
+        config.setValidationTimeout(env.getProperty("cosmoport.pool.validation-timeout-ms", Long.class, 5000L));
+        config.setLeakDetectionThreshold(env.getProperty("cosmoport.pool.leak-detection-threshold-ms", Long.class, 0L));
+        String testQuery = env.getProperty("cosmoport.pool.connection-test-query");
+        if (testQuery != null && !testQuery.isEmpty()) config.setConnectionTestQuery(testQuery);
+
+        // Connector/J client and server side prepared statement cache
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize",
+                env.getProperty("cosmoport.pool.statement-cache-size", "250"));
+        config.addDataSourceProperty("prepStmtCacheSqlLimit",
+                env.getProperty("cosmoport.pool.statement-cache-sql-limit", "2048"));
+        // batch endpoints: send a JDBC batch as one multi-row statement
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        // export: honour the fetch size with a server side cursor instead of reading the whole result
+        config.addDataSourceProperty("useCursorFetch", "true");
+
+        if (metrics != null) config.setMetricsTrackerFactory(metrics);
+        config.setRegisterMbeans(true);
+        return new HikariDataSource(config);
+    }
+
+    @Profile("prod")
+    @Bean(initMethod = "migrate")
+    public Flyway flyway() {
+        return Flyway.configure()
+                .dataSource(routingDataSource().getPrimary())
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
     }
 
     @Profile("dev")
@@ -91,6 +301,26 @@ public class AppConfig {
     private Properties additionalProperties() {
         Properties properties = new Properties();
         properties.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL5Dialect");
+        properties.setProperty("hibernate.jdbc.batch_size", env.getProperty("cosmoport.batch.jdbc-batch-size", "500"));
+        properties.setProperty("hibernate.order_updates", "true");
+        // list/count queries have one JPQL string per filter shape (ShipQueryShapes); keep all plans,
+        // and pad IN lists so the text index candidates do not create a plan per list length
+        properties.setProperty("hibernate.query.plan_cache_max_size", env.getProperty("cosmoport.query.plan-cache-size", "4096"));
+        properties.setProperty("hibernate.query.in_clause_parameter_padding", "true");
+
+        // second-level cache for Ship (@Cache on the entity) and the query cache for list/count; the
+        // result cache already holds list/count results, so the query cache defaults to off next to it
+        boolean cache = env.getProperty("cosmoport.hibernate-cache.enabled", Boolean.class, true);
+        boolean resultCache = env.getProperty("cosmoport.result-cache.enabled", Boolean.class, true);
+        properties.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(cache));
+        properties.setProperty("hibernate.cache.use_query_cache",
+                String.valueOf(cache && env.getProperty("cosmoport.hibernate-cache.query.enabled", Boolean.class, !resultCache)));
+        if (cache) {
+            properties.setProperty("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager());
+        }
+        properties.setProperty("hibernate.generate_statistics",
+                env.getProperty("cosmoport.hibernate-cache.statistics", "true"));
 //        properties.setProperty("hibernate.show_sql", "true");
 
         return properties;
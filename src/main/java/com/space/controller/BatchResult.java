@@ -0,0 +1,23 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Outcome of one item of a /rest/ships/batch request; status is the HTTP status the single-ship endpoint would return.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+class BatchResult {
+    public int index;
+    public int status;
+    public Long id;
+    public ShipUI ship;
+    public String error;
+
+    public BatchResult() {}
+
+    public BatchResult(int index, int status, Long id, ShipUI ship, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.ship = ship;
+        this.error = error;
+    }
+}
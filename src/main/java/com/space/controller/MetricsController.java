@@ -0,0 +1,25 @@
+package com.space.controller;
+
+import com.space.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@Controller
+public class MetricsController {
+    static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    @Autowired
+    MetricsRegistry metricsRegistry;
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public void metrics(HttpServletResponse response) throws IOException {
+        response.setContentType(TEXT_CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        metricsRegistry.writeText(response.getWriter());
+    }
+}
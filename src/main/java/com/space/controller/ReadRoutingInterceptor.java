@@ -0,0 +1,34 @@
+package com.space.controller;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/*
+ * Scopes read-your-writes to a request: "X-Read-Primary: true" sends all of the request's reads
+ * to the primary (for a client that has just written in an earlier request), and whatever a
+ * request pinned is dropped when it completes, so pooled threads start clean. An async request
+ * leaves the container thread before completing; its queries take the pin along (QueryExecutor).
+ */
+public class ReadRoutingInterceptor implements AsyncHandlerInterceptor {
+    static final String READ_PRIMARY_HEADER = "X-Read-Primary";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReplicaRoutingDataSource.release();
+        if (Boolean.parseBoolean(request.getHeader(READ_PRIMARY_HEADER))) ReplicaRoutingDataSource.stickToPrimary();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicaRoutingDataSource.release();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReplicaRoutingDataSource.release();
+    }
+}
@@ -1,18 +1,52 @@
 package com.space.controller;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import com.space.model.Ship;
+import com.space.model.ShipOrder;
+import com.space.service.QueryExecutor;
+import com.space.service.QueryResultCache;
+import com.space.service.ShipAggregates;
+import com.space.service.ShipColumnIndex;
+import com.space.service.ShipCursor;
+import com.space.service.ShipFilter;
+import com.space.service.ShipLeaderboard;
 import com.space.service.ShipService;
+import com.space.service.ShipSort;
+import com.space.service.ShipStats;
+import com.space.service.ShipUpdate;
+import com.space.service.ShipView;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import javax.persistence.*;
-import javax.persistence.criteria.*;
+import javax.persistence.OptimisticLockException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static com.space.util.ShipUtil.*;
 
@@ -20,13 +54,51 @@ import static com.space.util.ShipUtil.*;
 @Controller
 @RequestMapping(value = "/")
 public class ShipController {
-    @PersistenceContext
-    private EntityManager em;
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    static final String CSV_CONTENT_TYPE = "text/csv";
+    // request header condition selecting the async variant of list, count and get
+    static final String RESPOND_ASYNC = "Prefer=respond-async";
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+    private static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+            .addColumn("id").addColumn("name").addColumn("planet").addColumn("shipType").addColumn("prodDate")
+            .addColumn("isUsed").addColumn("speed").addColumn("crewSize").addColumn("rating")
+            .build().withHeader();
+
+    static {
+        CSV_MAPPER.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        CSV_MAPPER.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+    }
+
     @Autowired
     ShipService shipService;
     @Autowired
+    ShipColumnIndex shipColumnIndex;
+    @Autowired
+    QueryResultCache resultCache;
+    @Autowired
+    ShipAggregates shipAggregates;
+    @Autowired
+    ShipLeaderboard shipLeaderboard;
+    @Autowired
+    QueryExecutor queryExecutor;
+    @Autowired
     Logger logger;
 
+    @Value("${cosmoport.batch.max-items:50000}")
+    int batchMaxItems;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
 
     private Ship findShip(long id) throws IllegalArgumentException, NotFoundException {
         if (id <= 0) throw new IllegalArgumentException("Invalid ship id: " + id);
@@ -36,32 +108,34 @@ public class ShipController {
     }
 
     private Ship findShip(String ids) throws IllegalArgumentException {
+        return findShip(parseId(ids));
+    }
+
+    private static long parseId(String ids) throws IllegalArgumentException {
         long id;
         try {
             id = Long.parseLong(ids);
         } catch (NumberFormatException e) {
             throw new IllegalArgumentException("Invalid ship id: " + ids, e);
         }
-        return findShip(id);
+        if (id <= 0) throw new IllegalArgumentException("Invalid ship id: " + id);
+        return id;
     }
 
 
     @RequestMapping(value = "/rest/ships/{id}", method = RequestMethod.DELETE)
     public ResponseEntity<Integer> deleteShip(@PathVariable(value = "id") Long id)
     {
-        logger.trace("Execute ShipController.deleteShip(id: " + id + ")");
-        Ship ship;
-        try {
-            ship = findShip(id);
-        } catch (IllegalArgumentException e) {
-            logger.warn("Error deleting ship. Invalid id: " + id);
+        logger.trace("Execute ShipController.deleteShip(id: {})", id);
+        if (id <= 0) {
+            logger.warn("Error deleting ship. Invalid id: {}", id);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        } catch (NotFoundException e) {
-            logger.warn("Error deleting ship with id: " + id + " - not found.");
+        }
+        if (!shipService.deleteById(id)) {
+            logger.warn("Error deleting ship with id: {} - not found.", id);
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
-        shipService.delete(ship);
-        logger.info("Ship deleted successfully with id: " + id);
+        logger.debug("Ship deleted successfully with id: {}", id);
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
@@ -69,78 +143,148 @@ public class ShipController {
     @RequestMapping(value = "/rest/ships/{id}", method = RequestMethod.POST)
     @ResponseBody
     public ResponseEntity<ShipUI> updateShip(@PathVariable(value = "id") String id,
-                                             @RequestBody ShipUI shipUI) {
-        if (logger.isTraceEnabled()) {
-            logger.trace("Execute ShipController.updateShip(id: " + id + ", data: " + shipUI + ")");
-        }
+                                             @RequestBody ShipUI shipUI,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.trace("Execute ShipController.updateShip(id: {}, data: {})", id, shipUI);
 
-        Ship ship;
+        long shipId;
         try {
-            ship = findShip(id);
+            shipId = parseId(id);
         } catch (IllegalArgumentException e) {
-            logger.error("Error updating ship. Invalid id: " + id);
+            logger.error("Error updating ship. Invalid id: {}", id);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        } catch (NotFoundException e) {
-            logger.error("Error updating ship with id: " + id + " - not found.");
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-
-        if (Objects.isNull(shipUI)) {
-            shipUI = new ShipUI(ship);
-            return new ResponseEntity<>(shipUI, HttpStatus.OK);
         }
 
         try {
             checkInputData(shipUI, false);
         }
         catch (EmptyFieldsException e) {
-            logger.info("Ship info is not updated (all fields are null)");
-            shipUI = new ShipUI(ship);
-            return new ResponseEntity<>(shipUI, HttpStatus.OK);
+            logger.debug("Ship info is not updated (all fields are null)");
+            // nothing to write, but the If-Match condition still has to hold
+            ResponseEntity<ShipUI> current = getShip(id, null);
+            Long expectedVersion = parseIfMatch(ifMatch);
+            if (expectedVersion != null && current.getStatusCode() == HttpStatus.OK
+                    && !("\"" + expectedVersion + "\"").equals(current.getHeaders().getETag())) {
+                logger.warn("Ship with id: {} not updated - no longer at the version of If-Match: {}", id, ifMatch);
+                return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+            }
+            return current;
         }
         catch (IllegalArgumentException e) {
-            logger.error("Error updating ship - invalid data: " + e.getMessage() +
-                    " .Request body data: " + shipUI);
+            logger.error("Error updating ship - invalid data: {} .Request body data: {}", e.getMessage(), shipUI);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
-        if (!Objects.isNull(shipUI.name)) ship.setName(shipUI.name);
-        if (!Objects.isNull(shipUI.planet)) ship.setPlanet(shipUI.planet);
-        if (!Objects.isNull(shipUI.shipType)) ship.setShipType(shipUI.shipType);
-        if (!Objects.isNull(shipUI.prodDate)) ship.setProdDate(getFirstDayOfYear(shipUI.prodDate));
-        if (!Objects.isNull(shipUI.isUsed)) ship.setIsUsed(shipUI.isUsed);
-        if (!Objects.isNull(shipUI.speed)) ship.setSpeed(shipUI.speed);
-        if (!Objects.isNull(shipUI.crewSize)) ship.setCrewSize(shipUI.crewSize);
-        ship.setRating(calculateRating(ship.getSpeed(), ship.getProdDate(), ship.getIsUsed()));
-        shipService.save(ship);
+        ShipUpdate changes = new ShipUpdate(shipUI.name, shipUI.planet, shipUI.shipType,
+                Objects.isNull(shipUI.prodDate) ? null : getFirstDayOfYear(shipUI.prodDate),
+                shipUI.isUsed, shipUI.speed, shipUI.crewSize);
+        Ship ship;
+        try {
+            ship = shipService.update(shipId, changes, parseIfMatch(ifMatch));
+        } catch (OptimisticLockingFailureException e) {
+            logger.warn("Ship with id: {} not updated - {} (If-Match: {})", id, e.getMessage(), ifMatch);
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        if (Objects.isNull(ship)) {
+            logger.error("Error updating ship with id: {} - not found.", id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
         shipUI = new ShipUI(ship);
-        logger.info("Ship updated successfully with info: " + shipUI + " (id: " + id + ")");
-        return new ResponseEntity<>(shipUI, HttpStatus.OK);
+        logger.debug("Ship updated successfully with info: {} (id: {})", shipUI, id);
+        return ResponseEntity.ok().eTag(eTag(ship)).body(shipUI);
     }
 
 
     @RequestMapping(value = "/rest/ships/{id}", method = RequestMethod.GET)
     @ResponseBody
-    public ResponseEntity<ShipUI> getShip(@PathVariable(value = "id") String id) {
-        if (logger.isTraceEnabled()) {
-            logger.trace("Execute ShipController.getShip(id: " + id + ")");
-        }
+    public ResponseEntity<ShipUI> getShip(@PathVariable(value = "id") String id,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.trace("Execute ShipController.getShip(id: {})", id);
         Ship ship;
         try {
             ship = findShip(id);
         } catch (IllegalArgumentException e) {
-            logger.error("Error getting ship. Invalid id: " + id);
+            logger.error("Error getting ship. Invalid id: {}", id);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (NotFoundException e) {
-            logger.info("Unable to get ship with id: " + id + " - not found.");
+            logger.debug("Unable to get ship with id: {} - not found.", id);
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
+        String eTag = eTag(ship);
+        if (matchesAny(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         ShipUI shipUI = new ShipUI(ship);
-        logger.info("Ship retrieved successfully with info: " + shipUI + " (id: " + id + ")");
-        return new ResponseEntity<>(shipUI, HttpStatus.OK);
+        logger.debug("Ship retrieved successfully with info: {} (id: {})", shipUI, id);
+        return ResponseEntity.ok().eTag(eTag).body(shipUI);
+    }
+
+    @RequestMapping(value = "/rest/ships/{id}", method = RequestMethod.GET, headers = RESPOND_ASYNC)
+    @ResponseBody
+    public DeferredResult<ResponseEntity<ShipUI>> getShipAsync(@PathVariable(value = "id") String id,
+                                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return async("getShip", () -> getShip(id, ifNoneMatch));
+    }
+
+    /*
+     * Runs a handler on a QueryExecutor thread, so the container thread is free while the database
+     * works. Answers 503 when the executor's queue is full or the handler has not finished in time.
+     */
+    private <T> DeferredResult<ResponseEntity<T>> async(String handler, Supplier<ResponseEntity<T>> call) {
+        DeferredResult<ResponseEntity<T>> result = new DeferredResult<>(queryExecutor.getTimeoutMillis(),
+                new ResponseEntity<T>(HttpStatus.SERVICE_UNAVAILABLE));
+        Future<?> task;
+        try {
+            task = queryExecutor.submit(() -> {
+                try {
+                    result.setResult(call.get());
+                } catch (RuntimeException e) {
+                    result.setErrorResult(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Async {} rejected - query executor queue is full", handler);
+            result.setResult(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+            return result;
+        }
+        result.onTimeout(() -> {
+            logger.warn("Async {} timed out after {} ms", handler, queryExecutor.getTimeoutMillis());
+            queryExecutor.timedOut(task);
+        });
+        return result;
+    }
+
+    private static String eTag(Ship ship) {
+        return "\"" + ship.getVersion() + "\"";
+    }
+
+    // If-None-Match uses the weak comparison: W/"3" matches "3"
+    private static boolean matchesAny(String header, String eTag) {
+        if (Objects.isNull(header)) return false;
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(eTag)) return true;
+        }
+        return false;
     }
 
-    private void checkInputData(ShipUI ship, boolean createMode) throws EmptyFieldsException, IllegalArgumentException {
+    /*
+     * Version required by an If-Match header, or null when there is no condition (absent or "*").
+     * Only a single strong ETag can be checked; anything else can never match and yields -1.
+     */
+    private static Long parseIfMatch(String header) {
+        if (Objects.isNull(header) || header.trim().equals("*")) return null;
+        String tag = header.trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) return -1L;
+        try {
+            return Long.parseLong(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    void checkInputData(ShipUI ship, boolean createMode) throws EmptyFieldsException, IllegalArgumentException {
         final int MIN_PRODDATE_YEAR = 2800;
         final int MAX_PRODDATE_YEAR = 3019;
         final double MIN_SPEED = 0.01;
@@ -174,11 +318,9 @@ public class ShipController {
         if (!Objects.isNull(ship.prodDate)) {
             if (ship.prodDate < 0)
                 throw new IllegalArgumentException("Incorrect value for field 'prodDate': less then 0");
-            Calendar cal = Calendar.getInstance();
-            cal.setTimeInMillis(ship.prodDate);
-            cal.get(Calendar.YEAR);
-            if (cal.get(Calendar.YEAR) < MIN_PRODDATE_YEAR || cal.get(Calendar.YEAR) > MAX_PRODDATE_YEAR)
-                throw new IllegalArgumentException("Incorrect value for field 'prodDate': " + cal);
+            int year = getYear(ship.prodDate);
+            if (year < MIN_PRODDATE_YEAR || year > MAX_PRODDATE_YEAR)
+                throw new IllegalArgumentException("Incorrect value for field 'prodDate': year " + year);
         }
 
         if (!Objects.isNull(ship.speed)) {
@@ -197,17 +339,22 @@ public class ShipController {
     @RequestMapping(value = "/rest/ships", method = RequestMethod.POST)
     @ResponseBody
     public ResponseEntity<ShipUI> createShip(@RequestBody ShipUI shipUI) {
-        if (logger.isTraceEnabled()) {
-            logger.trace("Execute ShipController.create(" + shipUI + ")");
-        }
+        logger.trace("Execute ShipController.create({})", shipUI);
         try {
             checkInputData(shipUI, true);
         } catch(EmptyFieldsException | IllegalArgumentException e) {
-            logger.error("Error creating new ship - invalid data: " + e.getMessage() +
-                    " .Request body data: " + shipUI);
+            logger.error("Error creating new ship - invalid data: {} .Request body data: {}", e.getMessage(), shipUI);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
+        Ship ship = shipService.save(newShip(shipUI));
+        shipUI = new ShipUI(ship);
+        logger.debug("Ship created successfully with info: {}", ship);
+        return new ResponseEntity<>(shipUI, HttpStatus.OK);
+    }
+
+    // shipUI must have passed checkInputData(shipUI, true)
+    private static Ship newShip(ShipUI shipUI) {
         if (shipUI.isUsed == null) shipUI.isUsed = Boolean.FALSE;
 
         Ship ship = new Ship();
@@ -219,80 +366,144 @@ public class ShipController {
         ship.setSpeed(shipUI.speed);
         ship.setCrewSize(shipUI.crewSize);
         ship.setRating(calculateRating(ship.getSpeed(), ship.getProdDate(), ship.getIsUsed()));
-        ship = shipService.save(ship);
-        shipUI = new ShipUI(ship);
-        logger.info("Ship created successfully with info: " + ship);
-        return new ResponseEntity<>(shipUI, HttpStatus.OK);
+        return ship;
     }
 
-    private List<Predicate> getPredicates(CriteriaBuilder cb, Root<Ship> root,
-            String name, String planet, String shipType, Long after, Long before,
-                                  Boolean isUsed, Double minSpeed, Double maxSpeed,
-                                  Integer minCrewSize, Integer maxCrewSize,
-                                  Double minRating, Double maxRating) {
-
-        List<Predicate> prs = new LinkedList<>();
-
-        if (!Objects.isNull(name)) {
-            prs.add(cb.like(root.get("name"), "%" + name + "%"));
-        }
+    private static void applyChanges(Ship ship, ShipUI shipUI) {
+        if (!Objects.isNull(shipUI.name)) ship.setName(shipUI.name);
+        if (!Objects.isNull(shipUI.planet)) ship.setPlanet(shipUI.planet);
+        if (!Objects.isNull(shipUI.shipType)) ship.setShipType(shipUI.shipType);
+        if (!Objects.isNull(shipUI.prodDate)) ship.setProdDate(getFirstDayOfYear(shipUI.prodDate));
+        if (!Objects.isNull(shipUI.isUsed)) ship.setIsUsed(shipUI.isUsed);
+        if (!Objects.isNull(shipUI.speed)) ship.setSpeed(shipUI.speed);
+        if (!Objects.isNull(shipUI.crewSize)) ship.setCrewSize(shipUI.crewSize);
+        ship.setRating(calculateRating(ship.getSpeed(), ship.getProdDate(), ship.getIsUsed()));
+    }
 
-        if (!Objects.isNull(planet)) {
-            prs.add(cb.like(root.get("planet"), "%" + planet + "%"));
-        }
 
-        if (!Objects.isNull(shipType)) {
-            prs.add(cb.like(root.get("shipType").as(String.class), shipType));
+    @RequestMapping(value = "/rest/ships/batch", method = RequestMethod.POST)
+    @ResponseBody
+    public ResponseEntity<List<BatchResult>> createShips(@RequestBody List<ShipUI> shipUIs) {
+        logger.trace("Execute ShipController.createShips({} ships)", shipUIs.size());
+        if (shipUIs.size() > batchMaxItems) return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+
+        BatchResult[] results = new BatchResult[shipUIs.size()];
+        List<Ship> ships = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < shipUIs.size(); i++) {
+            ShipUI shipUI = shipUIs.get(i);
+            try {
+                checkInputData(shipUI, true);
+            } catch (EmptyFieldsException | IllegalArgumentException e) {
+                results[i] = new BatchResult(i, HttpStatus.BAD_REQUEST.value(), null, null, e.getMessage());
+                continue;
+            }
+            ships.add(newShip(shipUI));
+            indexes.add(i);
         }
 
-        if (!Objects.isNull(after)) {
-            Date d = new Date();
-            d.setTime(after);
-            prs.add(cb.greaterThanOrEqualTo(root.get("prodDate"), d));
+        if (!ships.isEmpty()) shipService.createAll(ships);
+        for (int i = 0; i < ships.size(); i++) {
+            Ship ship = ships.get(i);
+            results[indexes.get(i)] = new BatchResult(indexes.get(i), HttpStatus.OK.value(), ship.getId(),
+                    new ShipUI(ship), null);
         }
-        if (!Objects.isNull(before)) {
-            Date d = new Date();
-            d.setTime(before);
-            prs.add(cb.lessThanOrEqualTo(root.get("prodDate"), d));
-//            prs.add(cb.lessThanOrEqualTo(cb.function("year", Integer.class, root.get("prodDate")),
-//                    getYearOfMillis(before)));
-        }
-
+        logger.info("Batch create: {} of {} ships created", ships.size(), shipUIs.size());
+        return new ResponseEntity<>(Arrays.asList(results), HttpStatus.OK);
+    }
 
-        if (!Objects.isNull(minSpeed)) {
-            prs.add(cb.greaterThanOrEqualTo(root.get("speed"), minSpeed));
-        }
-        if (!Objects.isNull(maxSpeed)) {
-            prs.add(cb.lessThanOrEqualTo(root.get("speed"), maxSpeed));
+    @RequestMapping(value = "/rest/ships/batch/update", method = RequestMethod.POST)
+    @ResponseBody
+    public ResponseEntity<List<BatchResult>> updateShips(@RequestBody List<ShipUI> shipUIs) {
+        logger.trace("Execute ShipController.updateShips({} ships)", shipUIs.size());
+        if (shipUIs.size() > batchMaxItems) return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+
+        BatchResult[] results = new BatchResult[shipUIs.size()];
+        Map<Long, Consumer<Ship>> updates = new LinkedHashMap<>();
+        Map<Long, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < shipUIs.size(); i++) {
+            ShipUI shipUI = shipUIs.get(i);
+            Long id = shipUI == null ? null : shipUI.id;
+            if (id == null || id <= 0) {
+                results[i] = new BatchResult(i, HttpStatus.BAD_REQUEST.value(), id, null, "Invalid ship id: " + id);
+                continue;
+            }
+            if (indexes.containsKey(id)) {
+                results[i] = new BatchResult(i, HttpStatus.BAD_REQUEST.value(), id, null, "Duplicate ship id: " + id);
+                continue;
+            }
+            try {
+                checkInputData(shipUI, false);
+                updates.put(id, ship -> applyChanges(ship, shipUI));
+            } catch (EmptyFieldsException e) {
+                updates.put(id, ship -> {});
+            } catch (IllegalArgumentException e) {
+                results[i] = new BatchResult(i, HttpStatus.BAD_REQUEST.value(), id, null, e.getMessage());
+                continue;
+            }
+            indexes.put(id, i);
         }
 
-        if (!Objects.isNull(minCrewSize)) {
-            prs.add(cb.greaterThanOrEqualTo(root.get("crewSize"), minCrewSize));
-        }
-        if (!Objects.isNull(maxCrewSize)) {
-            prs.add(cb.lessThanOrEqualTo(root.get("crewSize"), maxCrewSize));
-        }
+        Map<Long, Ship> updated;
+        try {
+            updated = updates.isEmpty() ? Collections.emptyMap() : shipService.updateAll(updates);
+        } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+            logger.warn("Batch update rolled back - a ship was modified concurrently: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        for (Map.Entry<Long, Integer> entry : indexes.entrySet()) {
+            Ship ship = updated.get(entry.getKey());
+            int i = entry.getValue();
+            results[i] = ship == null
+                    ? new BatchResult(i, HttpStatus.NOT_FOUND.value(), entry.getKey(), null, "Ship not found")
+                    : new BatchResult(i, HttpStatus.OK.value(), ship.getId(), new ShipUI(ship), null);
+        }
+        logger.info("Batch update: {} of {} ships updated", updated.size(), shipUIs.size());
+        return new ResponseEntity<>(Arrays.asList(results), HttpStatus.OK);
+    }
 
-        if (!Objects.isNull(minRating)) {
-            prs.add(cb.greaterThanOrEqualTo(root.get("rating"), minRating));
-        }
-        if (!Objects.isNull(maxRating)) {
-            prs.add(cb.lessThanOrEqualTo(root.get("rating"), maxRating));
+    @RequestMapping(value = "/rest/ships/batch/delete", method = RequestMethod.POST)
+    @ResponseBody
+    public ResponseEntity<List<BatchResult>> deleteShips(@RequestBody List<Long> ids) {
+        logger.trace("Execute ShipController.deleteShips({} ids)", ids.size());
+        if (ids.size() > batchMaxItems) return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+
+        List<Long> valid = new ArrayList<>();
+        for (Long id : ids) {
+            if (id != null && id > 0) valid.add(id);
+        }
+        Set<Long> deleted = valid.isEmpty() ? new HashSet<>() : new HashSet<>(shipService.deleteAll(valid));
+        int deletedCount = deleted.size();
+
+        List<BatchResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            if (id == null || id <= 0) {
+                results.add(new BatchResult(i, HttpStatus.BAD_REQUEST.value(), id, null, "Invalid ship id: " + id));
+            } else if (deleted.remove(id)) {
+                results.add(new BatchResult(i, HttpStatus.OK.value(), id, null, null));
+            } else {
+                results.add(new BatchResult(i, HttpStatus.NOT_FOUND.value(), id, null, "Ship not found"));
+            }
         }
+        logger.info("Batch delete: {} of {} ships deleted", deletedCount, ids.size());
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
 
-        if (!Objects.isNull(isUsed)) {
-            if (isUsed) prs.add(cb.isTrue(root.get("isUsed")));
-            else prs.add(cb.isFalse(root.get("isUsed")));
+    // a single ShipOrder or a key list such as "-RATING,SPEED"; anything else orders by id
+    private static ShipSort parseOrder(String order) {
+        if (Objects.isNull(order)) return ShipSort.ID;
+        try {
+            return ShipSort.parse(order);
+        } catch (IllegalArgumentException e) {
+            return ShipSort.ID;
         }
-
-        return prs;
     }
 
 
     @RequestMapping(value = "/rest/ships", method = RequestMethod.GET, produces="application/json")
     @ResponseBody
-    @ResponseStatus(HttpStatus.OK)
-    public List<Ship> listShip(@RequestParam(value = "name", required = false) String name,
+    public ResponseEntity<List<ShipView>> listShip(@RequestParam(value = "name", required = false) String name,
                                @RequestParam(value = "planet", required = false) String planet,
                                @RequestParam(value = "shipType", required = false) String shipType,
                                @RequestParam(value = "after", required = false) Long after,
@@ -307,43 +518,228 @@ public class ShipController {
                                @RequestParam(value = "order", required = false) String order,
                                @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
                                @RequestParam(value = "pageSize", required = false) Integer pageSize,
+                               @RequestParam(value = "cursor", required = false) String cursor,
                                HttpServletRequest request) {
 
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Execute ShipController.listShip(" + request.getQueryString() + ")");
+        logger.trace("Execute ShipController.listShip({})", request.getQueryString());
+        return list(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed,
+                minCrewSize, maxCrewSize, minRating, maxRating, order, pageNumber, pageSize, cursor);
+    }
+
+    // the body of listShip, on the request's parameters only: the async handler runs it on a query
+    // thread, where the request object may already be recycled
+    private ResponseEntity<List<ShipView>> list(String name, String planet, String shipType, Long after, Long before,
+                                                Boolean isUsed, Double minSpeed, Double maxSpeed,
+                                                Integer minCrewSize, Integer maxCrewSize,
+                                                Double minRating, Double maxRating, String order,
+                                                Integer pageNumber, Integer pageSize, String cursor) {
+        if (Objects.isNull(pageNumber)) pageNumber = 0;
+        if (Objects.isNull(pageSize) || pageSize == 0) pageSize = 3;
+
+        ShipFilter filter = new ShipFilter(name, planet, shipType, after, before,
+                isUsed, minSpeed, maxSpeed, minCrewSize, maxCrewSize, minRating, maxRating);
+        ShipSort shipSort = parseOrder(order);
+        ShipCursor seek;
+        try {
+            seek = parseCursor(cursor, shipSort);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Error listing ships. {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
-        if (logger.isDebugEnabled()) {
-            logger.debug("Ship list URL params: " + request.getQueryString());
+
+        List<ShipView> ships;
+        if (shipColumnIndex.canAnswer(filter)) {
+            ships = shipColumnIndex.list(filter, shipSort, seek, pageNumber, pageSize);
+        } else {
+            // best rated first within a shipType/isUsed partition: served from the leaderboard
+            ships = seek == null ? shipLeaderboard.list(filter, shipSort, pageNumber, pageSize) : null;
+            if (ships == null) {
+                int number = pageNumber, size = pageSize;
+                ships = resultCache.list(filter, shipSort, cursor, number, size,
+                        () -> shipService.list(filter, shipSort, seek, number, size));
+            }
         }
+        return new ResponseEntity<>(ships, nextCursorHeaders(ships, shipSort, pageSize), HttpStatus.OK);
+    }
 
+    @RequestMapping(value = "/rest/ships", method = RequestMethod.GET, headers = RESPOND_ASYNC, produces="application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<List<ShipView>>> listShipAsync(@RequestParam(value = "name", required = false) String name,
+                               @RequestParam(value = "planet", required = false) String planet,
+                               @RequestParam(value = "shipType", required = false) String shipType,
+                               @RequestParam(value = "after", required = false) Long after,
+                               @RequestParam(value = "before", required = false) Long before,
+                               @RequestParam(value = "isUsed", required = false) Boolean isUsed,
+                               @RequestParam(value = "minSpeed", required = false) Double minSpeed,
+                               @RequestParam(value = "maxSpeed", required = false) Double maxSpeed,
+                               @RequestParam(value = "minCrewSize", required = false) Integer minCrewSize,
+                               @RequestParam(value = "maxCrewSize", required = false) Integer maxCrewSize,
+                               @RequestParam(value = "minRating", required = false) Double minRating,
+                               @RequestParam(value = "maxRating", required = false) Double maxRating,
+                               @RequestParam(value = "order", required = false) String order,
+                               @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
+                               @RequestParam(value = "pageSize", required = false) Integer pageSize,
+                               @RequestParam(value = "cursor", required = false) String cursor,
+                               HttpServletRequest request) {
+        logger.trace("Execute ShipController.listShip({})", request.getQueryString());
+        return async("listShip", () -> list(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed,
+                minCrewSize, maxCrewSize, minRating, maxRating, order, pageNumber, pageSize, cursor));
+    }
+
+
+    @RequestMapping(value = "/rest/ships/page", method = RequestMethod.GET, produces="application/json")
+    @ResponseBody
+    public ResponseEntity<ShipPage> getPage(@RequestParam(value = "name", required = false) String name,
+                                            @RequestParam(value = "planet", required = false) String planet,
+                                            @RequestParam(value = "shipType", required = false) String shipType,
+                                            @RequestParam(value = "after", required = false) Long after,
+                                            @RequestParam(value = "before", required = false) Long before,
+                                            @RequestParam(value = "isUsed", required = false) Boolean isUsed,
+                                            @RequestParam(value = "minSpeed", required = false) Double minSpeed,
+                                            @RequestParam(value = "maxSpeed", required = false) Double maxSpeed,
+                                            @RequestParam(value = "minCrewSize", required = false) Integer minCrewSize,
+                                            @RequestParam(value = "maxCrewSize", required = false) Integer maxCrewSize,
+                                            @RequestParam(value = "minRating", required = false) Double minRating,
+                                            @RequestParam(value = "maxRating", required = false) Double maxRating,
+                                            @RequestParam(value = "order", required = false) String order,
+                                            @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
+                                            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+                                            @RequestParam(value = "cursor", required = false) String cursor) {
         if (Objects.isNull(pageNumber)) pageNumber = 0;
         if (Objects.isNull(pageSize) || pageSize == 0) pageSize = 3;
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<Ship> listCriteriaQuery = cb.createQuery(Ship.class);
-        Root<Ship> root = listCriteriaQuery.from(Ship.class);
-        root.alias("ship_");
-        List<Predicate> prs = getPredicates(cb, root, name, planet, shipType, after, before,
+        ShipFilter filter = new ShipFilter(name, planet, shipType, after, before,
                 isUsed, minSpeed, maxSpeed, minCrewSize, maxCrewSize, minRating, maxRating);
-
-        if(prs.size() > 0) {
-             listCriteriaQuery.where(cb.and(prs.toArray(new Predicate[0])));
+        ShipSort shipSort = parseOrder(order);
+        ShipCursor seek;
+        try {
+            seek = parseCursor(cursor, shipSort);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Error getting ship page. {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
-        if (!Objects.isNull(order)) {
-            try {
-                listCriteriaQuery.orderBy(cb.asc(root.get(ShipOrder.valueOf(order).getFieldName())));
-            } catch (IllegalArgumentException e) {
-                listCriteriaQuery.orderBy(cb.asc(root.get("id")));
+        ShipPage page;
+        if (shipColumnIndex.canAnswer(filter)) {
+            List<ShipView> ships = shipColumnIndex.list(filter, shipSort, seek, pageNumber, pageSize);
+            page = new ShipPage(ships, shipColumnIndex.count(filter));
+        } else {
+            int number = pageNumber, size = pageSize;
+            List<ShipView> cachedShips = resultCache.cachedList(filter, shipSort, cursor, number, size);
+            Long cachedCount = resultCache.cachedCount(filter);
+            if (cachedShips != null && cachedCount != null) {
+                return new ResponseEntity<>(new ShipPage(cachedShips, cachedCount),
+                        nextCursorHeaders(cachedShips, shipSort, pageSize), HttpStatus.OK);
             }
+            long generation = resultCache.generation();
+            page = readOnlyTransaction.execute(status -> {
+                List<ShipView> ships = shipService.list(filter, shipSort, seek, number, size);
+
+                // a short page after an offset tells the total without asking the database
+                if (seek == null && ships.size() < size && (ships.size() > 0 || number == 0)) {
+                    return new ShipPage(ships, (long) number * size + ships.size());
+                }
+                return new ShipPage(ships, shipService.count(filter));
+            });
+            resultCache.putList(filter, shipSort, cursor, number, size, page.ships, generation);
+            resultCache.putCount(filter, page.count, generation);
+        }
+        return new ResponseEntity<>(page, nextCursorHeaders(page.ships, shipSort, pageSize), HttpStatus.OK);
+    }
+
+    // the best rated ships, optionally of one shipType and/or isUsed; same as order=-RATING
+    @RequestMapping(value = "/rest/ships/top", method = RequestMethod.GET, produces="application/json")
+    @ResponseBody
+    public ResponseEntity<List<ShipView>> getTop(@RequestParam(value = "shipType", required = false) String shipType,
+                                                 @RequestParam(value = "isUsed", required = false) Boolean isUsed,
+                                                 @RequestParam(value = "limit", required = false) Integer limit) {
+        if (Objects.isNull(limit)) limit = 10;
+        if (limit <= 0) {
+            logger.warn("Error getting top ships. Invalid limit: {}", limit);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        List<ShipView> ships = shipLeaderboard.top(shipType, isUsed, limit);
+        if (ships == null) {
+            ShipFilter filter = new ShipFilter(null, null, shipType, null, null, isUsed,
+                    null, null, null, null, null, null);
+            ships = shipService.list(filter, ShipLeaderboard.BEST, null, 0, limit);
         }
-        else listCriteriaQuery.orderBy(cb.asc(root.get("id")));
+        return new ResponseEntity<>(ships, HttpStatus.OK);
+    }
 
-        TypedQuery<Ship> listQuery = em.createQuery(listCriteriaQuery);
-        listQuery.setFirstResult(pageNumber * pageSize).setMaxResults(pageSize);
-        return listQuery.getResultList();
-}
+    private static ShipCursor parseCursor(String cursor, ShipSort shipSort) throws IllegalArgumentException {
+        if (Objects.isNull(cursor)) return null;
+        ShipCursor seek = ShipCursor.decode(cursor);
+        if (!seek.getSort().equals(shipSort)) {
+            throw new IllegalArgumentException("Cursor was issued for order " + seek.getSort());
+        }
+        return seek;
+    }
+
+    private static HttpHeaders nextCursorHeaders(List<ShipView> ships, ShipSort shipSort, int pageSize) {
+        HttpHeaders headers = new HttpHeaders();
+        if (ships.size() == pageSize) {
+            headers.set(NEXT_CURSOR_HEADER, ShipCursor.after(ships.get(ships.size() - 1), shipSort).encode());
+        }
+        return headers;
+    }
+
+    /*
+     * Writes every ship matching the filters, in the requested order, as NDJSON (default) or CSV.
+     * Rows are written as ShipService.export streams them, without collecting the result.
+     */
+    @RequestMapping(value = "/rest/ships/export", method = RequestMethod.GET)
+    public void exportShips(@RequestParam(value = "name", required = false) String name,
+                            @RequestParam(value = "planet", required = false) String planet,
+                            @RequestParam(value = "shipType", required = false) String shipType,
+                            @RequestParam(value = "after", required = false) Long after,
+                            @RequestParam(value = "before", required = false) Long before,
+                            @RequestParam(value = "isUsed", required = false) Boolean isUsed,
+                            @RequestParam(value = "minSpeed", required = false) Double minSpeed,
+                            @RequestParam(value = "maxSpeed", required = false) Double maxSpeed,
+                            @RequestParam(value = "minCrewSize", required = false) Integer minCrewSize,
+                            @RequestParam(value = "maxCrewSize", required = false) Integer maxCrewSize,
+                            @RequestParam(value = "minRating", required = false) Double minRating,
+                            @RequestParam(value = "maxRating", required = false) Double maxRating,
+                            @RequestParam(value = "order", required = false) String order,
+                            @RequestParam(value = "format", required = false) String format,
+                            HttpServletResponse response) throws IOException {
+        ObjectWriter writer;
+        boolean ndjson = Objects.isNull(format) || "ndjson".equals(format);
+        if (ndjson) {
+            response.setContentType(NDJSON_CONTENT_TYPE);
+            writer = objectMapper.writer().withRootValueSeparator("\n");
+        } else if ("csv".equals(format)) {
+            response.setContentType(CSV_CONTENT_TYPE);
+            writer = CSV_MAPPER.writer(CSV_SCHEMA);
+        } else {
+            logger.warn("Error exporting ships. Unknown format: {}", format);
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        ObjectWriter rowWriter = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        response.setCharacterEncoding("UTF-8");
+
+        ShipFilter filter = new ShipFilter(name, planet, shipType, after, before,
+                isUsed, minSpeed, maxSpeed, minCrewSize, maxCrewSize, minRating, maxRating);
+        ShipSort shipSort = parseOrder(order);
+        OutputStream out = response.getOutputStream();
+        long rows;
+        try (SequenceWriter sequence = rowWriter.writeValues(out)) {
+            rows = shipService.export(filter, shipSort, ship -> {
+                try {
+                    sequence.write(ship);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        if (rows > 0 && ndjson) out.write('\n');
+        out.flush();
+        logger.info("Exported {} ships", rows);
+    }
 
 
     @RequestMapping(value = "/rest/ships/count", method = RequestMethod.GET, produces="application/json")
@@ -362,20 +758,56 @@ public class ShipController {
                          @RequestParam(value = "minRating", required = false) Double minRating,
                          @RequestParam(value = "maxRating", required = false) Double maxRating) {
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<Long> countCriteriaQuery = cb.createQuery(Long.class);
-        Root<Ship> root = countCriteriaQuery.from(Ship.class);
-        root.alias("ship_");
-        List<Predicate> prs = getPredicates(cb, root, name, planet, shipType, after, before,
+        ShipFilter filter = new ShipFilter(name, planet, shipType, after, before,
                 isUsed, minSpeed, maxSpeed, minCrewSize, maxCrewSize, minRating, maxRating);
-        countCriteriaQuery.select(cb.count(root.get("id")).alias("id"));
-
-        if(prs.size() > 0) {
-            countCriteriaQuery.where(cb.and(prs.toArray(new Predicate[0])));
+        if (shipColumnIndex.canAnswer(filter)) {
+            return shipColumnIndex.count(filter);
         }
 
-        TypedQuery<Long> countQuery = em.createQuery(countCriteriaQuery);
-        return countQuery.getSingleResult();
+        return resultCache.count(filter, () -> shipService.count(filter));
+    }
+
+    @RequestMapping(value = "/rest/ships/count", method = RequestMethod.GET, headers = RESPOND_ASYNC, produces="application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<Long>> getCountAsync(@RequestParam(value = "name", required = false) String name,
+                         @RequestParam(value = "planet", required = false) String planet,
+                         @RequestParam(value = "shipType", required = false) String shipType,
+                         @RequestParam(value = "after", required = false) Long after,
+                         @RequestParam(value = "before", required = false) Long before,
+                         @RequestParam(value = "isUsed", required = false) Boolean isUsed,
+                         @RequestParam(value = "minSpeed", required = false) Double minSpeed,
+                         @RequestParam(value = "maxSpeed", required = false) Double maxSpeed,
+                         @RequestParam(value = "minCrewSize", required = false) Integer minCrewSize,
+                         @RequestParam(value = "maxCrewSize", required = false) Integer maxCrewSize,
+                         @RequestParam(value = "minRating", required = false) Double minRating,
+                         @RequestParam(value = "maxRating", required = false) Double maxRating) {
+        return async("getCount", () -> ResponseEntity.ok(getCount(name, planet, shipType, after, before, isUsed,
+                minSpeed, maxSpeed, minCrewSize, maxCrewSize, minRating, maxRating)));
+    }
+
+    // without filters the stats come from the incrementally kept aggregates, not the database
+    @RequestMapping(value = "/rest/ships/stats", method = RequestMethod.GET, produces="application/json")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public ShipStats getStats(@RequestParam(value = "name", required = false) String name,
+                              @RequestParam(value = "planet", required = false) String planet,
+                              @RequestParam(value = "shipType", required = false) String shipType,
+                              @RequestParam(value = "after", required = false) Long after,
+                              @RequestParam(value = "before", required = false) Long before,
+                              @RequestParam(value = "isUsed", required = false) Boolean isUsed,
+                              @RequestParam(value = "minSpeed", required = false) Double minSpeed,
+                              @RequestParam(value = "maxSpeed", required = false) Double maxSpeed,
+                              @RequestParam(value = "minCrewSize", required = false) Integer minCrewSize,
+                              @RequestParam(value = "maxCrewSize", required = false) Integer maxCrewSize,
+                              @RequestParam(value = "minRating", required = false) Double minRating,
+                              @RequestParam(value = "maxRating", required = false) Double maxRating) {
+
+        ShipFilter filter = new ShipFilter(name, planet, shipType, after, before,
+                isUsed, minSpeed, maxSpeed, minCrewSize, maxCrewSize, minRating, maxRating);
+        if (filter.isEmpty() && shipAggregates.isEnabled()) {
+            return shipAggregates.stats();
+        }
+        return shipService.stats(filter);
     }
 
 }
@@ -0,0 +1,18 @@
+package com.space.controller;
+
+
+import com.space.service.ShipView;
+
+import java.util.List;
+
+class ShipPage {
+    public List<ShipView> ships;
+    public long count;
+
+    public ShipPage() {}
+
+    public ShipPage(List<ShipView> ships, long count) {
+        this.ships = ships;
+        this.count = count;
+    }
+}
@@ -0,0 +1,269 @@
+package com.space.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Sends connections of read-only transactions to one of the replicas and everything else to
+ * the primary. The transaction's read-only flag is only known once it has started, so this has
+ * to sit behind a LazyConnectionDataSourceProxy, which asks for the real connection at the
+ * first statement.
+ *
+ * Replicas failing a health check (or a connection attempt) are skipped until a later check
+ * passes; with no healthy replica reads go to the primary. A thread that opened a read-write
+ * connection, or called stickToPrimary(), keeps reading from the primary until release(), so
+ * a request sees its own writes even when the replicas lag. Other clients do not see them until
+ * the replicas catch up, which is why AppConfig refuses replicas together with the read-through
+ * caches: a lagging read would put the data from before the write back into them.
+ */
+@ManagedResource(objectName = "com.space:type=ReplicaRouting")
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final ThreadLocal<Boolean> STICKY = new ThreadLocal<>();
+
+    public enum Policy {
+        ROUND_ROBIN, LEAST_BUSY;
+
+        // accepts the property spelling, e.g. "least-busy"
+        public static Policy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Policy policy;
+    private final boolean readYourWrites;
+    private final int healthCheckTimeoutSeconds;
+    private final ScheduledExecutorService healthChecks;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    /*
+     * healthCheckIntervalMillis 0 disables the background check; checkHealth() can still be
+     * called directly. readYourWrites false keeps reads on replicas after a write, only
+     * stickToPrimary() pins the thread then.
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Policy policy,
+                                    boolean readYourWrites, long healthCheckIntervalMillis,
+                                    int healthCheckTimeoutSeconds) {
+        this.primary = primary;
+        for (int i = 0; i < replicas.size(); i++) this.replicas.add(new Replica(i, replicas.get(i)));
+        this.policy = policy;
+        this.readYourWrites = readYourWrites;
+        this.healthCheckTimeoutSeconds = healthCheckTimeoutSeconds;
+        if (healthCheckIntervalMillis > 0 && !replicas.isEmpty()) {
+            healthChecks = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecks.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMillis,
+                    healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            healthChecks = null;
+        }
+    }
+
+    // reads on this thread go to the primary until release()
+    public static void stickToPrimary() {
+        STICKY.set(Boolean.TRUE);
+    }
+
+    public static boolean isStickToPrimary() {
+        return STICKY.get() != null;
+    }
+
+    public static void release() {
+        STICKY.remove();
+    }
+
+    // runs read on the primary whatever its transaction's read-only flag, for snapshots kept in memory
+    public static <T> T onPrimary(Supplier<T> read) {
+        boolean sticky = isStickToPrimary();
+        stickToPrimary();
+        try {
+            return read.get();
+        } finally {
+            if (!sticky) release();
+        }
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            writes.increment();
+            if (readYourWrites && TransactionSynchronizationManager.isActualTransactionActive()) stickToPrimary();
+            return primary.getConnection();
+        }
+        if (!isStickToPrimary()) {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                Replica replica = choose();
+                if (replica == null) break;
+                try {
+                    Connection connection = replica.open();
+                    replicaReads.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    replica.healthy = false;
+                    failovers.increment();
+                    log.warn("Replica {} unavailable, marked down: {}", replica.index, e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica routing uses the pools' own credentials");
+    }
+
+    private Replica choose() {
+        Replica chosen = null;
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) continue;
+            if (policy == Policy.ROUND_ROBIN) return replica;
+            if (chosen == null || replica.inFlight.get() < chosen.inFlight.get()) chosen = replica;
+        }
+        return chosen;
+    }
+
+    @ManagedOperation
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(healthCheckTimeoutSeconds);
+            } catch (SQLException e) {
+                healthy = false;
+            }
+            if (healthy && !replica.healthy) {
+                log.info("Replica {} is back up", replica.index);
+            } else if (!healthy && replica.healthy) {
+                // warn: info events may be discarded when the async logger falls behind
+                log.warn("Replica {} failed its health check", replica.index);
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (healthChecks != null) healthChecks.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) ((Closeable) replica.dataSource).close();
+        }
+        if (primary instanceof Closeable) ((Closeable) primary).close();
+    }
+
+    @ManagedAttribute
+    public String getPolicy() {
+        return policy.name();
+    }
+
+    @ManagedAttribute
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    @ManagedAttribute
+    public int getHealthyReplicaCount() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) healthy++;
+        }
+        return healthy;
+    }
+
+    @ManagedAttribute
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    @ManagedAttribute
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    @ManagedAttribute
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    private static class Replica {
+        final int index;
+        final DataSource dataSource;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile boolean healthy = true;
+
+        Replica(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+        }
+
+        // counts the connection as in flight until it is closed, for LEAST_BUSY
+        Connection open() throws SQLException {
+            Connection target = dataSource.getConnection();
+            inFlight.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("equals")) return proxy == args[0];
+                        if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                        if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                            inFlight.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.space.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+@ManagedResource(objectName = "com.space:type=ConnectionPool,name=cosmoport")
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+    private volatile PoolStats poolStats;
+    private volatile int maximumPoolSize;
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder usageCount = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                connectionsCreated.increment();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageCount.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    @ManagedAttribute
+    public int getActiveConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getActiveConnections();
+    }
+
+    @ManagedAttribute
+    public int getIdleConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getIdleConnections();
+    }
+
+    @ManagedAttribute
+    public int getTotalConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getTotalConnections();
+    }
+
+    @ManagedAttribute
+    public int getPendingThreads() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getPendingThreads();
+    }
+
+    @ManagedAttribute
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    // share of the pool currently checked out, 1.0 means every connection is busy
+    @ManagedAttribute
+    public double getSaturation() {
+        return maximumPoolSize == 0 ? 0 : (double) getActiveConnections() / maximumPoolSize;
+    }
+
+    @ManagedAttribute
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    @ManagedAttribute
+    public double getAverageWaitMillis() {
+        long count = acquireCount.sum();
+        return count == 0 ? 0 : acquireNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute
+    public double getMaxWaitMillis() {
+        return maxAcquireNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute
+    public double getAverageUsageMillis() {
+        long count = usageCount.sum();
+        return count == 0 ? 0 : usageMillis.sum() / (double) count;
+    }
+
+    @ManagedAttribute
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @ManagedAttribute
+    public long getConnectionsCreated() {
+        return connectionsCreated.sum();
+    }
+}
@@ -0,0 +1,90 @@
+package com.space.metrics;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.persistence.EntityManagerFactory;
+
+// second-level and query cache counters from Hibernate's statistics (hibernate.generate_statistics)
+@ManagedResource(objectName = "com.space:type=HibernateCache")
+public class HibernateCacheStatistics {
+    static final String SHIP_REGION = "ship";
+
+    private final Statistics statistics;
+
+    public HibernateCacheStatistics(EntityManagerFactory emf) {
+        this.statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @ManagedAttribute
+    public boolean isStatisticsEnabled() {
+        return statistics.isStatisticsEnabled();
+    }
+
+    @ManagedAttribute
+    public long getShipHits() {
+        CacheRegionStatistics region = shipRegion();
+        return region == null ? 0 : region.getHitCount();
+    }
+
+    @ManagedAttribute
+    public long getShipMisses() {
+        CacheRegionStatistics region = shipRegion();
+        return region == null ? 0 : region.getMissCount();
+    }
+
+    @ManagedAttribute
+    public long getShipPuts() {
+        CacheRegionStatistics region = shipRegion();
+        return region == null ? 0 : region.getPutCount();
+    }
+
+    @ManagedAttribute
+    public double getShipHitRatio() {
+        return ratio(getShipHits(), getShipMisses());
+    }
+
+    @ManagedAttribute
+    public long getQueryHits() {
+        return statistics.getQueryCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryMisses() {
+        return statistics.getQueryCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryPuts() {
+        return statistics.getQueryCachePutCount();
+    }
+
+    @ManagedAttribute
+    public double getQueryHitRatio() {
+        return ratio(getQueryHits(), getQueryMisses());
+    }
+
+    @ManagedOperation
+    public void clear() {
+        statistics.clear();
+    }
+
+    private CacheRegionStatistics shipRegion() {
+        if (!statistics.isStatisticsEnabled()) return null;
+        try {
+            return statistics.getDomainDataRegionStatistics(SHIP_REGION);
+        } catch (IllegalArgumentException e) {
+            // no such region: the second-level cache is off
+            return null;
+        }
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,133 @@
+package com.space.metrics;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Latency, throughput and errors of one handler mapping or service method. The rates are
+ * one-minute exponentially weighted moving averages, folded in every TICK by whichever
+ * recording thread first notices that the tick is due.
+ */
+@ManagedResource
+public class LatencyStats {
+    private static final long TICK = TimeUnit.SECONDS.toNanos(5);
+    private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final Rate requests = new Rate();
+    private final Rate failures = new Rate();
+    private final AtomicLong lastTick;
+
+    public LatencyStats(String name) {
+        this.name = name;
+        this.lastTick = new AtomicLong(System.nanoTime());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // error: the call failed (exception or 5xx); clientError: the request was rejected (4xx)
+    public void record(long startNanos, long endNanos, boolean error, boolean clientError) {
+        tickIfDue(endNanos);
+        histogram.recordNanos(endNanos - startNanos);
+        requests.uncounted.increment();
+        if (error) {
+            errors.increment();
+            failures.uncounted.increment();
+        }
+        if (clientError) clientErrors.increment();
+    }
+
+    private void tickIfDue(long now) {
+        long last = lastTick.get();
+        long due = now - last;
+        if (due < TICK) return;
+        long next = last + due - due % TICK;
+        if (!lastTick.compareAndSet(last, next)) return;
+        for (long ticks = due / TICK; ticks > 0; ticks--) {
+            requests.tick();
+            failures.tick();
+        }
+    }
+
+    @ManagedAttribute
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @ManagedAttribute
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @ManagedAttribute
+    public long getClientErrors() {
+        return clientErrors.sum();
+    }
+
+    @ManagedAttribute
+    public double getRatePerSecond() {
+        tickIfDue(System.nanoTime());
+        return requests.perSecond();
+    }
+
+    @ManagedAttribute
+    public double getErrorRatePerSecond() {
+        tickIfDue(System.nanoTime());
+        return failures.perSecond();
+    }
+
+    @ManagedAttribute
+    public double getMeanMillis() {
+        return histogram.getMeanMillis();
+    }
+
+    @ManagedAttribute
+    public double getP50Millis() {
+        return histogram.getPercentileMillis(0.50);
+    }
+
+    @ManagedAttribute
+    public double getP95Millis() {
+        return histogram.getPercentileMillis(0.95);
+    }
+
+    @ManagedAttribute
+    public double getP99Millis() {
+        return histogram.getPercentileMillis(0.99);
+    }
+
+    @ManagedAttribute
+    public double getMaxMillis() {
+        return histogram.getMaxMillis();
+    }
+
+    private static class Rate {
+        final LongAdder uncounted = new LongAdder();
+        // events per TICK; only the ticking thread writes it
+        volatile double rate;
+        volatile boolean initialized;
+
+        void tick() {
+            double count = uncounted.sumThenReset();
+            if (initialized) {
+                rate += ALPHA * (count - rate);
+            } else {
+                rate = count;
+                initialized = true;
+            }
+        }
+
+        double perSecond() {
+            return rate * TimeUnit.SECONDS.toNanos(1) / TICK;
+        }
+    }
+}
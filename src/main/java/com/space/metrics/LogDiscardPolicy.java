@@ -0,0 +1,40 @@
+package com.space.metrics;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.DefaultAsyncQueueFullPolicy;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * What an asynchronous logger does with an event when its ring buffer is full: events at or below
+ * log4j2.discardThreshold are dropped and counted, more severe ones wait for room as usual. Log4j
+ * creates the policy itself (log4j2.asyncQueueFullPolicy), so the count is kept statically.
+ */
+public class LogDiscardPolicy extends DefaultAsyncQueueFullPolicy {
+    private static final LongAdder discarded = new LongAdder();
+
+    private final Level threshold;
+
+    public LogDiscardPolicy() {
+        this(Level.toLevel(PropertiesUtil.getProperties().getStringProperty("log4j2.discardThreshold"), Level.INFO));
+    }
+
+    LogDiscardPolicy(Level threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public EventRoute getRoute(long backgroundThreadId, Level level) {
+        if (level.isLessSpecificThan(threshold)) {
+            discarded.increment();
+            return EventRoute.DISCARD;
+        }
+        return super.getRoute(backgroundThreadId, level);
+    }
+
+    public static long getDiscardedCount() {
+        return discarded.sum();
+    }
+}
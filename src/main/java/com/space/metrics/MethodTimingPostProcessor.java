@@ -0,0 +1,66 @@
+package com.space.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.AopInfrastructureBean;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Times every call through the given interfaces (ShipService, ShipRepository) into
+ * MetricsRegistry.call("<Interface>.<method>"). Beans that are already proxies, like the
+ * transactional service and the Spring Data repository, get the advisor at the front of their
+ * chain, so the time includes the transaction; other beans are wrapped in a new proxy.
+ */
+public class MethodTimingPostProcessor implements BeanPostProcessor, AopInfrastructureBean {
+    private final MetricsRegistry registry;
+    private final List<Class<?>> interfaces;
+
+    public MethodTimingPostProcessor(MetricsRegistry registry, List<Class<?>> interfaces) {
+        this.registry = registry;
+        this.interfaces = interfaces;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        for (Class<?> type : interfaces) {
+            if (type.isInstance(bean)) return advise(bean, type);
+        }
+        return bean;
+    }
+
+    private Object advise(Object bean, Class<?> type) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(timing(type.getSimpleName()));
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvisor(0, advisor);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addInterface(type);
+        proxyFactory.addAdvisor(advisor);
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private MethodInterceptor timing(String prefix) {
+        ConcurrentHashMap<Method, LatencyStats> stats = new ConcurrentHashMap<>();
+        return invocation -> {
+            // Object methods (toString, equals) are not worth a histogram
+            if (invocation.getMethod().getDeclaringClass() == Object.class) return invocation.proceed();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invocation.proceed();
+                failed = false;
+                return result;
+            } finally {
+                stats.computeIfAbsent(invocation.getMethod(), m -> registry.call(prefix + "." + m.getName()))
+                        .record(start, System.nanoTime(), failed, false);
+            }
+        };
+    }
+}
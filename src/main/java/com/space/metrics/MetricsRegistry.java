@@ -0,0 +1,119 @@
+package com.space.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/*
+ * Latency stats by name: handler mappings ("GET /rest/ships/{id}") and service or repository
+ * methods ("ShipService.list"). Each one is exported over JMX when first used and printed by
+ * writeText for the /metrics endpoint, along with counters registered by other components.
+ */
+@ManagedResource(objectName = "com.space:type=Metrics")
+public class MetricsRegistry {
+    private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private final ConcurrentHashMap<String, LatencyStats> requests = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyStats> calls = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, LongSupplier> counters = new ConcurrentSkipListMap<>();
+    private final ObjectProvider<MBeanExporter> exporter;
+
+    // looked up on first use, since the registry is needed before the exporter exists
+    public MetricsRegistry(ObjectProvider<MBeanExporter> exporter) {
+        this.exporter = exporter;
+        counter("log_events_discarded_total", LogDiscardPolicy::getDiscardedCount);
+    }
+
+    // a monotonically increasing value read when the metrics are written
+    public void counter(String name, LongSupplier value) {
+        counters.put(name, value);
+    }
+
+    public LatencyStats request(String handler) {
+        LatencyStats stats = requests.get(handler);
+        return stats != null ? stats : requests.computeIfAbsent(handler, h -> export(new LatencyStats(h), "Request"));
+    }
+
+    public LatencyStats call(String method) {
+        LatencyStats stats = calls.get(method);
+        return stats != null ? stats : calls.computeIfAbsent(method, m -> export(new LatencyStats(m), "Call"));
+    }
+
+    private LatencyStats export(LatencyStats stats, String type) {
+        MBeanExporter exporter = this.exporter.getIfAvailable();
+        if (exporter == null) return stats;
+        try {
+            exporter.registerManagedResource(stats, new ObjectName("com.space:type=" + type + "Latency,name="
+                    + ObjectName.quote(stats.getName())));
+        } catch (MalformedObjectNameException | RuntimeException e) {
+            log.warn("Could not export metrics of {}: {}", stats.getName(), e.getMessage());
+        }
+        return stats;
+    }
+
+    @ManagedAttribute
+    public int getHandlerCount() {
+        return requests.size();
+    }
+
+    @ManagedAttribute
+    public int getMethodCount() {
+        return calls.size();
+    }
+
+    // log events dropped because the async loggers' ring buffer was full
+    @ManagedAttribute
+    public long getDiscardedLogEvents() {
+        return LogDiscardPolicy.getDiscardedCount();
+    }
+
+    // Prometheus text exposition format, durations in seconds
+    public void writeText(PrintWriter out) {
+        write(out, "http_server_requests", "handler", requests);
+        write(out, "method_calls", "method", calls);
+        counters.forEach((name, value) -> {
+            out.println("# TYPE " + name + " counter");
+            out.println(name + " " + value.getAsLong());
+        });
+        out.flush();
+    }
+
+    private static void write(PrintWriter out, String metric, String label, Map<String, LatencyStats> all) {
+        if (all.isEmpty()) return;
+        out.println("# TYPE " + metric + "_seconds summary");
+        for (LatencyStats stats : new TreeMap<>(all).values()) {
+            String tags = label + "=\"" + stats.getName().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            line(out, metric + "_seconds", tags + ",quantile=\"0.5\"", stats.getP50Millis() / 1000);
+            line(out, metric + "_seconds", tags + ",quantile=\"0.95\"", stats.getP95Millis() / 1000);
+            line(out, metric + "_seconds", tags + ",quantile=\"0.99\"", stats.getP99Millis() / 1000);
+            line(out, metric + "_seconds_count", tags, stats.getCount());
+            line(out, metric + "_seconds_sum", tags, stats.getMeanMillis() * stats.getCount() / 1000);
+            line(out, metric + "_seconds_max", tags, stats.getMaxMillis() / 1000);
+            line(out, metric + "_errors_total", tags, stats.getErrors());
+            line(out, metric + "_client_errors_total", tags, stats.getClientErrors());
+            line(out, metric + "_rate_per_second", tags, stats.getRatePerSecond());
+            line(out, metric + "_error_rate_per_second", tags, stats.getErrorRatePerSecond());
+        }
+    }
+
+    private static void line(PrintWriter out, String name, String tags, double value) {
+        out.println(name + "{" + tags + "} " + String.format(Locale.ROOT, "%.6f", value));
+    }
+
+    private static void line(PrintWriter out, String name, String tags, long value) {
+        out.println(name + "{" + tags + "} " + value);
+    }
+}
@@ -0,0 +1,41 @@
+package com.space.metrics;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/*
+ * Records every handled request under its method and mapping pattern, e.g. "GET /rest/ships/{id}".
+ * An asynchronously handled request is recorded once, when its result has been written, with the
+ * time since it first arrived.
+ */
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+    private static final String START = RequestMetricsInterceptor.class.getName() + ".start";
+
+    private final MetricsRegistry registry;
+
+    public RequestMetricsInterceptor(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC && request.getAttribute(START) != null) return true;
+        request.setAttribute(START, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START);
+        if (start == null) return;
+        long end = System.nanoTime();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String handlerName = request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+        int status = response.getStatus();
+        registry.request(handlerName).record((Long) start, end, ex != null || status >= 500, ex == null && status >= 400 && status < 500);
+    }
+}
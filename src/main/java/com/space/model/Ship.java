@@ -2,6 +2,9 @@ package com.space.model;
 
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
@@ -13,7 +16,15 @@ import static javax.persistence.GenerationType.IDENTITY;
 
 
 @Entity
-@Table(name = "ship")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "ship")
+@Table(name = "ship", indexes = {
+        @Index(name = "ship_speed_idx", columnList = "speed"),
+        @Index(name = "ship_prod_date_idx", columnList = "prodDate"),
+        @Index(name = "ship_rating_idx", columnList = "rating"),
+        @Index(name = "ship_crew_size_idx", columnList = "crewSize"),
+        @Index(name = "ship_type_used_rating_idx", columnList = "shipType, isUsed, rating")
+})
 public class Ship implements Serializable {
     private Long id;
     private String name;
@@ -27,6 +38,24 @@ public class Ship implements Serializable {
     private Integer crewSize;
     private Double rating;
 
+    // optimistic lock; exposed to clients as the ETag, never in the body
+    @JsonIgnore
+    private Long version;
+
+    public Ship() {}
+
+    public Ship(Ship other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.planet = other.planet;
+        this.shipType = other.shipType;
+        this.prodDate = other.prodDate == null ? null : new Date(other.prodDate.getTime());
+        this.isUsed = other.isUsed;
+        this.speed = other.speed;
+        this.crewSize = other.crewSize;
+        this.rating = other.rating;
+        this.version = other.version;
+    }
     @Id
     @GeneratedValue(strategy = IDENTITY)
     @Column(name = "id")
@@ -54,7 +83,7 @@ public class Ship implements Serializable {
         this.planet = planet;
     }
 
-    @Column(name = "shipType")
+    @Column(name = "shipType", columnDefinition = "ENUM('TRANSPORT', 'MILITARY', 'MERCHANT')")
     @Enumerated(EnumType.STRING)
     public ShipType getShipType() {
         return shipType;
@@ -107,6 +136,15 @@ public class Ship implements Serializable {
         this.rating = rating;
     }
 
+    @Version
+    @Column(name = "version")
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
 
     @Override
     public boolean equals(Object o) {
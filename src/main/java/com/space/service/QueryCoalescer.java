@@ -0,0 +1,146 @@
+package com.space.service;
+
+import com.space.metrics.MetricsRegistry;
+import com.space.model.Ship;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Single-flight loading of list and count results: while one request runs the query for a key
+ * (the normalized filter, order and page), identical requests wait for its result, or its
+ * exception, instead of running their own. A waiting request gives up after maxWait and runs the
+ * query itself. Every committed write detaches the queries in flight, so a request arriving after
+ * a write never receives a result read before it.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=QueryCoalescer")
+public class QueryCoalescer implements ShipChangeListener {
+    private final boolean enabled;
+    private final long maxWaitMillis;
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public QueryCoalescer(@Value("${cosmoport.coalescing.enabled:true}") boolean enabled,
+                          @Value("${cosmoport.coalescing.max-wait-ms:2000}") long maxWaitMillis) {
+        this.enabled = enabled;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Autowired(required = false)
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        metricsRegistry.counter("query_coalescer_executions_total", executions::sum);
+        metricsRegistry.counter("query_coalescer_collapsed_total", collapsed::sum);
+        metricsRegistry.counter("query_coalescer_timeouts_total", timeouts::sum);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T load(Object key, Supplier<T> loader) {
+        if (!enabled) return loader.get();
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) return (T) await(leader, loader);
+
+        executions.increment();
+        try {
+            T value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> leader, Supplier<?> loader) {
+        waiting.incrementAndGet();
+        try {
+            Object value = leader.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+            collapsed.increment();
+            return value;
+        } catch (ExecutionException e) {
+            collapsed.increment();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        executions.increment();
+        return loader.get();
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        inFlight.clear();
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        inFlight.clear();
+    }
+
+    @Override
+    public void reset() {
+        inFlight.clear();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    @ManagedAttribute
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @ManagedAttribute
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    // queries actually run, by the first request for a key or by one that stopped waiting
+    @ManagedAttribute
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    // requests answered with another request's result
+    @ManagedAttribute
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    @ManagedAttribute
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
@@ -0,0 +1,253 @@
+package com.space.service;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import com.space.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Runs the read queries of asynchronously handled requests, so that a slow database ties up these
+ * threads and not the container's. Either a fixed pool of platform threads, or a thread per task
+ * (virtual threads) of which at most `concurrency` run at once, the rest waiting on a semaphore.
+ * Both admit at most queueCapacity waiting queries; beyond that submit() rejects at once instead
+ * of queueing without bound. A task runs with the submitting thread's read routing
+ * (ReplicaRoutingDataSource.stickToPrimary).
+ */
+@ManagedResource(objectName = "com.space:type=QueryExecutor")
+public class QueryExecutor {
+    private static final Logger log = LoggerFactory.getLogger(QueryExecutor.class);
+    private static final Object RUNNING = new Object();
+    private static final Object CANCELLED = new Object();
+
+    private final ThreadPoolExecutor pool;
+    private final ExecutorService perTask;
+    private final Semaphore running;
+    private final Semaphore admitted;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public QueryExecutor(int threads, int queueCapacity, long timeoutMillis) {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "cosmoport-query-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.perTask = null;
+        this.running = null;
+        this.admitted = null;
+        this.concurrency = threads;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // perTask starts a thread for every task, such as Executors.newVirtualThreadPerTaskExecutor()
+    public QueryExecutor(ExecutorService perTask, int concurrency, int queueCapacity, long timeoutMillis) {
+        this.pool = null;
+        this.perTask = perTask;
+        this.running = new Semaphore(concurrency);
+        this.admitted = new Semaphore(concurrency + queueCapacity);
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /*
+     * Executors.newVirtualThreadPerTaskExecutor() of Java 21 and later, looked up by reflection as
+     * the sources target Java 8; null on an older JDK.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Virtual threads are not available on Java {}: {}", System.getProperty("java.version"), e.toString());
+            return null;
+        }
+    }
+
+    @Autowired(required = false)
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        metricsRegistry.counter("query_executor_rejected_total", rejected::sum);
+        metricsRegistry.counter("query_executor_timeouts_total", timeouts::sum);
+    }
+
+    public Future<?> submit(Runnable task) throws RejectedExecutionException {
+        boolean primary = ReplicaRoutingDataSource.isStickToPrimary();
+        Runnable query = () -> {
+            if (primary) ReplicaRoutingDataSource.stickToPrimary();
+            try {
+                task.run();
+            } finally {
+                ReplicaRoutingDataSource.release();
+                completed.increment();
+            }
+        };
+        try {
+            return pool != null ? pool.submit(query) : execute(query);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    // the permits go back before the future completes, so its waiter can submit again at once
+    private Future<?> execute(Runnable query) {
+        if (!admitted.tryAcquire()) throw new RejectedExecutionException("More than " + queueCapacity + " queries waiting");
+        Permits permits = new Permits();
+        FutureTask<?> future = new FutureTask<Void>(() -> {
+            try {
+                query.run();
+            } finally {
+                permits.release();
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (isCancelled()) permits.cancelled();
+            }
+        };
+        try {
+            perTask.execute(() -> {
+                if (!permits.acquireRunning()) return;
+                try {
+                    // a no-op if timedOut cancelled it just now
+                    future.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+        return future;
+    }
+
+    /*
+     * The permits of one thread-per-task query, each given back once. A query cancelled before it
+     * runs gives its admitted permit back at once, and its thread, if already waiting for a running
+     * permit, is woken and leaves without one; a query cancelled while it runs keeps both until it
+     * ends, as it still holds a connection.
+     */
+    private class Permits {
+        private final AtomicBoolean admittedHeld = new AtomicBoolean(true);
+        private final AtomicBoolean runningHeld = new AtomicBoolean();
+        // null before the thread starts, then the thread while it waits for a running permit, then RUNNING
+        private final AtomicReference<Object> state = new AtomicReference<>();
+
+        // false when the query was cancelled before it got to run
+        boolean acquireRunning() {
+            Thread current = Thread.currentThread();
+            if (!state.compareAndSet(null, current)) return false;
+            try {
+                running.acquire();
+                runningHeld.set(true);
+            } catch (InterruptedException e) {
+                release();
+                return false;
+            }
+            if (!state.compareAndSet(current, RUNNING)) {
+                // cancelled after the permit was granted: drop the interrupt meant for the wait
+                Thread.interrupted();
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        void cancelled() {
+            Object previous = state.getAndSet(CANCELLED);
+            if (previous == RUNNING) return;
+            if (admittedHeld.compareAndSet(true, false)) admitted.release();
+            if (previous instanceof Thread) ((Thread) previous).interrupt();
+        }
+
+        void release() {
+            if (runningHeld.compareAndSet(true, false)) running.release();
+            if (admittedHeld.compareAndSet(true, false)) admitted.release();
+        }
+    }
+
+    // the request gave up on the task: drop it from the queue if it has not started yet
+    public void timedOut(Future<?> task) {
+        timeouts.increment();
+        if (task.cancel(false) && pool != null) pool.purge();
+    }
+
+    public void shutdown() {
+        if (pool != null) pool.shutdownNow();
+        if (perTask != null) perTask.shutdownNow();
+    }
+
+    @ManagedAttribute
+    public boolean isThreadPerTask() {
+        return pool == null;
+    }
+
+    // how long a request waits for its query, queueing included, before it is answered with 503
+    @ManagedAttribute
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    // pool threads, or the permits of the semaphore bounding the tasks that run at once
+    @ManagedAttribute
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @ManagedAttribute
+    public int getActive() {
+        return pool != null ? pool.getActiveCount() : concurrency - running.availablePermits();
+    }
+
+    @ManagedAttribute
+    public int getQueued() {
+        if (pool != null) return pool.getQueue().size();
+        return Math.max(0, concurrency + queueCapacity - admitted.availablePermits() - getActive());
+    }
+
+    @ManagedAttribute
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    @ManagedAttribute
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
@@ -0,0 +1,276 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+ * LRU cache of list and count results keyed by the normalized request (filter, order, page).
+ * Any committed write starts a new generation and drops everything; results computed
+ * while a write was committing are not stored. Size is bounded by an estimate of the
+ * retained heap rather than by entry count, since a page of ships and a count differ a lot.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=QueryResultCache")
+public class QueryResultCache implements ShipChangeListener {
+    private static final long ENTRY_OVERHEAD = 128;
+    private static final long SHIP_SIZE = 168;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private QueryCoalescer coalescer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long generation;
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryResultCache(@Value("${cosmoport.result-cache.enabled:true}") boolean enabled,
+                            @Value("${cosmoport.result-cache.max-bytes:16777216}") long maxBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+    }
+
+    @Autowired
+    public void setCoalescer(QueryCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    public List<ShipView> list(ShipFilter filter, ShipSort order, String cursor, int pageNumber, int pageSize,
+                               Supplier<List<ShipView>> loader) {
+        return get(new Key(filter, order, cursor, pageNumber, pageSize), loader);
+    }
+
+    public long count(ShipFilter filter, Supplier<Long> loader) {
+        return get(new Key(filter, null, null, -1, -1), loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<ShipView> cachedList(ShipFilter filter, ShipSort order, String cursor, int pageNumber, int pageSize) {
+        return (List<ShipView>) lookup(new Key(filter, order, cursor, pageNumber, pageSize));
+    }
+
+    public Long cachedCount(ShipFilter filter) {
+        return (Long) lookup(new Key(filter, null, null, -1, -1));
+    }
+
+    public void putList(ShipFilter filter, ShipSort order, String cursor, int pageNumber, int pageSize,
+                        List<ShipView> ships, long loadedAt) {
+        store(new Key(filter, order, cursor, pageNumber, pageSize), ships, loadedAt);
+    }
+
+    public void putCount(ShipFilter filter, long count, long loadedAt) {
+        store(new Key(filter, null, null, -1, -1), count, loadedAt);
+    }
+
+    public long generation() {
+        if (!enabled) return 0;
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a miss is loaded through the coalescer, so identical concurrent misses run one query
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, Supplier<T> loader) {
+        if (!enabled) return coalescer.load(key, loader);
+        Object cached = lookup(key);
+        if (cached != null) return (T) cached;
+        long loadedAt = generation();
+        T value = coalescer.load(key, loader);
+        store(key, value, loadedAt);
+        return value;
+    }
+
+    private Object lookup(Key key) {
+        if (!enabled) return null;
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(Key key, Object value, long loadedAt) {
+        if (!enabled) return;
+        long weight = weigh(value);
+        if (weight > maxBytes) return;
+        if (value instanceof List) value = Collections.unmodifiableList((List<?>) value);
+        lock.lock();
+        try {
+            if (loadedAt != generation) return;
+            Entry old = entries.put(key, new Entry(value, weight));
+            if (old != null) bytes -= old.weight;
+            bytes += weight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long weigh(Object value) {
+        if (!(value instanceof Collection)) return ENTRY_OVERHEAD;
+        long weight = ENTRY_OVERHEAD;
+        for (Object item : (Collection<?>) value) {
+            ShipView ship = (ShipView) item;
+            weight += SHIP_SIZE;
+            if (ship.getName() != null) weight += 2L * ship.getName().length();
+            if (ship.getPlanet() != null) weight += 2L * ship.getPlanet().length();
+        }
+        return weight;
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        invalidate();
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        invalidate();
+    }
+
+    @Override
+    public void reset() {
+        invalidate();
+    }
+
+    @ManagedOperation
+    public void invalidate() {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            generation++;
+            entries.clear();
+            bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+        invalidations.increment();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @ManagedAttribute
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static class Entry {
+        final Object value;
+        final long weight;
+
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // order == null marks a count; counts ignore order and paging
+    private static class Key {
+        final ShipFilter filter;
+        final ShipSort order;
+        final String cursor;
+        final int pageNumber;
+        final int pageSize;
+
+        Key(ShipFilter filter, ShipSort order, String cursor, int pageNumber, int pageSize) {
+            this.filter = filter;
+            this.order = order;
+            this.cursor = cursor;
+            this.pageNumber = cursor == null ? pageNumber : 0;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return pageNumber == key.pageNumber &&
+                    pageSize == key.pageSize &&
+                    filter.equals(key.filter) &&
+                    Objects.equals(order, key.order) &&
+                    Objects.equals(cursor, key.cursor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, order, cursor, pageNumber, pageSize);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.space.service;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.repository.ShipRepository;
+import com.space.util.ShipUtil;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Unfiltered fleet statistics kept up to date by every committed write instead of being queried.
+ * Ships are grouped like the rows of the stats query (planet, shipType, isUsed, year), by exact
+ * planet spelling; ShipStats merges spellings that differ only in case or accents. Each group
+ * keeps a count per distinct value, so min and max survive removals, and counts and sums are added up
+ * from those on roll-up instead of being adjusted by every write, which would drift. The last stats of
+ * each ship are kept as well, since an update only reports the new values; that is one small object
+ * per ship, filled by loading the whole table at startup.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipAggregates")
+public class ShipAggregates implements ShipChangeListener, SmartInitializingSingleton {
+    private final boolean enabled;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ShipRepository shipRepository;
+
+    private final Map<Long, Member> members = new HashMap<>();
+    private final Map<List<Object>, Group> groups = new HashMap<>();
+    private final ShipVersions versions = new ShipVersions();
+    // rolled up on the first read after a write
+    private volatile ShipStats stats;
+
+    public ShipAggregates(@Value("${cosmoport.stats.incremental:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Autowired
+    public void setShipRepository(ShipRepository shipRepository) {
+        this.shipRepository = shipRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) reload();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public int getShipCount() {
+        lock.readLock().lock();
+        try {
+            return members.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public int getGroupCount() {
+        lock.readLock().lock();
+        try {
+            return groups.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @ManagedOperation
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            // read under the lock, so no write committed meanwhile is overwritten by an older row
+            List<Ship> ships = ReplicaRoutingDataSource.onPrimary(() -> shipRepository.findAll());
+            members.clear();
+            groups.clear();
+            versions.clear();
+            for (Ship ship : ships) add(ship.getId(), ship);
+            stats = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public ShipStats stats() {
+        lock.readLock().lock();
+        try {
+            ShipStats current = stats;
+            if (current == null) {
+                List<ShipStatsCell> cells = new ArrayList<>(groups.size());
+                for (Group group : groups.values()) cells.add(group.toCell());
+                stats = current = ShipStats.of(cells);
+            }
+            return current;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            if (!versions.saved(ship)) return;
+            remove(ship.getId());
+            add(ship.getId(), ship);
+            stats = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            versions.deleted(id);
+            if (remove(id)) stats = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (enabled) reload();
+    }
+
+    private void add(Long id, Ship ship) {
+        Integer year = ship.getProdDate() == null ? null : ShipUtil.getYear(ship.getProdDate().getTime());
+        List<Object> key = Arrays.asList(ship.getPlanet(), ship.getShipType(), ship.getIsUsed(), year);
+        Group group = groups.computeIfAbsent(key, Group::new);
+        Member member = new Member(group, ship);
+        members.put(id, member);
+        group.add(member);
+    }
+
+    private boolean remove(Long id) {
+        Member member = members.remove(id);
+        if (member == null) return false;
+        Group group = member.group;
+        group.remove(member);
+        if (group.count == 0) groups.remove(group.key);
+        return true;
+    }
+
+    // the group holds the key, so a ship costs its three stats and a reference
+    private static class Member {
+        final Group group;
+        final Double speed;
+        final Double rating;
+        final Integer crewSize;
+
+        Member(Group group, Ship ship) {
+            this.group = group;
+            speed = ship.getSpeed();
+            rating = ship.getRating();
+            crewSize = ship.getCrewSize();
+        }
+    }
+
+    private static class Group {
+        final List<Object> key;
+        long count;
+        final TreeMap<Double, Integer> speeds = new TreeMap<>();
+        final TreeMap<Double, Integer> ratings = new TreeMap<>();
+        final TreeMap<Integer, Integer> crewSizes = new TreeMap<>();
+
+        Group(List<Object> key) {
+            this.key = key;
+        }
+
+        void add(Member m) {
+            count++;
+            increment(speeds, m.speed, 1);
+            increment(ratings, m.rating, 1);
+            increment(crewSizes, m.crewSize, 1);
+        }
+
+        void remove(Member m) {
+            count--;
+            increment(speeds, m.speed, -1);
+            increment(ratings, m.rating, -1);
+            increment(crewSizes, m.crewSize, -1);
+        }
+
+        private static <T> void increment(Map<T, Integer> counts, T value, int delta) {
+            if (value == null) return;
+            counts.merge(value, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+
+        private static long count(Map<?, Integer> counts) {
+            long count = 0;
+            for (int n : counts.values()) count += n;
+            return count;
+        }
+
+        private static double sum(Map<? extends Number, Integer> counts) {
+            double sum = 0;
+            for (Map.Entry<? extends Number, Integer> e : counts.entrySet()) sum += e.getKey().doubleValue() * e.getValue();
+            return sum;
+        }
+
+        private static long sumLong(Map<Integer, Integer> counts) {
+            long sum = 0;
+            for (Map.Entry<Integer, Integer> e : counts.entrySet()) sum += (long) e.getKey() * e.getValue();
+            return sum;
+        }
+
+        ShipStatsCell toCell() {
+            return new ShipStatsCell((String) key.get(0), (ShipType) key.get(1), (Boolean) key.get(2),
+                    (Integer) key.get(3), count,
+                    count(speeds), speeds.isEmpty() ? null : speeds.firstKey(),
+                    speeds.isEmpty() ? null : speeds.lastKey(), sum(speeds),
+                    count(ratings), ratings.isEmpty() ? null : ratings.firstKey(),
+                    ratings.isEmpty() ? null : ratings.lastKey(), sum(ratings),
+                    count(crewSizes), crewSizes.isEmpty() ? null : crewSizes.firstKey(),
+                    crewSizes.isEmpty() ? null : crewSizes.lastKey(), sumLong(crewSizes));
+        }
+    }
+}
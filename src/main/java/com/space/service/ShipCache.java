@@ -0,0 +1,193 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Size and TTL bounded LRU cache in front of ShipRepository.findById. Entries are private
+ * copies, so callers are free to modify the ship they get back.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipCache")
+public class ShipCache implements ShipChangeListener {
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // bumped by every write, so a load that raced with a write is not cached
+    private long generation;
+    // so the save of an older commit reported last does not replace a newer ship
+    private final ShipVersions versions = new ShipVersions();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ShipCache(@Value("${cosmoport.ship-cache.enabled:true}") boolean enabled,
+                     @Value("${cosmoport.ship-cache.max-size:10000}") int maxSize,
+                     @Value("${cosmoport.ship-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public Ship get(Long id) {
+        if (!enabled) return null;
+        lock.lock();
+        try {
+            Entry entry = entries.get(id);
+            if (entry != null && entry.expiresAt - System.nanoTime() < 0) {
+                entries.remove(id);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return new Ship(entry.ship);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long generation() {
+        if (!enabled) return 0;
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caches a ship loaded while generation() was still the given value
+    public void put(Ship ship, long loadedAt) {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            if (loadedAt == generation) store(ship);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            generation++;
+            if (versions.saved(ship)) store(ship);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            generation++;
+            versions.deleted(id);
+            entries.remove(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+
+    @ManagedOperation
+    public void clear() {
+        lock.lock();
+        try {
+            generation++;
+            entries.clear();
+            versions.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(Ship ship) {
+        entries.put(ship.getId(), new Entry(new Ship(ship), System.nanoTime() + ttlNanos));
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    @ManagedAttribute
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static class Entry {
+        final Ship ship;
+        final long expiresAt;
+
+        Entry(Ship ship, long expiresAt) {
+            this.ship = ship;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
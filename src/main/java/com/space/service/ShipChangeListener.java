@@ -0,0 +1,12 @@
+package com.space.service;
+
+import com.space.model.Ship;
+
+// Notified by ShipService after a write has been committed.
+public interface ShipChangeListener {
+    void shipSaved(Ship ship);
+    void shipDeleted(Long id);
+
+    // the ship table was changed without going through ShipService; drop or rebuild everything kept
+    void reset();
+}
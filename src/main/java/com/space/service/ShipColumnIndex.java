@@ -0,0 +1,427 @@
+package com.space.service;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import com.space.model.Ship;
+import com.space.model.ShipOrder;
+import com.space.model.ShipType;
+import com.space.repository.ShipRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Read engine that keeps every ship in primitive column arrays, so list and count
+ * requests can be answered without going to the database. Rows are never moved on
+ * update; deleted rows are tombstoned and compacted away once they make up half the table.
+ * A NULL column is marked in a bitset: like in SQL it fails every range filter and sorts
+ * below every value.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipColumnIndex")
+public class ShipColumnIndex implements ShipChangeListener, SmartInitializingSingleton {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final boolean enabled;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ShipRepository shipRepository;
+
+    private int size;
+    private int deleted;
+    private long[] ids;
+    private String[] names;
+    private String[] planets;
+    // case and accent folded like ShipTextIndex, as LIKE compares them under utf8_general_ci
+    private String[] nameKeys;
+    private String[] planetKeys;
+    private long[] prodDates;
+    private double[] speeds;
+    private double[] ratings;
+    private int[] crewSizes;
+    private final BitSet[] types = new BitSet[ShipType.values().length];
+    private final BitSet used = new BitSet();
+    private final BitSet live = new BitSet();
+    private final BitSet nullProdDates = new BitSet();
+    private final BitSet nullSpeeds = new BitSet();
+    private final BitSet nullRatings = new BitSet();
+    private final BitSet nullCrewSizes = new BitSet();
+    private final BitSet nullUsed = new BitSet();
+    private final BitSet[] nullColumns = {nullProdDates, nullSpeeds, nullRatings, nullCrewSizes, nullUsed};
+    private final Map<Long, Integer> rowsById = new HashMap<>();
+    private final ShipVersions versions = new ShipVersions();
+
+    public ShipColumnIndex(@Value("${cosmoport.index.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < types.length; i++) types[i] = new BitSet();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Autowired
+    public void setShipRepository(ShipRepository shipRepository) {
+        this.shipRepository = shipRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) reload();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // LIKE wildcards in a name or planet filter are left to the database
+    public boolean canAnswer(ShipFilter filter) {
+        return enabled && plain(filter.getName()) && plain(filter.getPlanet());
+    }
+
+    private static boolean plain(String pattern) {
+        return pattern == null || (pattern.indexOf('%') < 0 && pattern.indexOf('_') < 0 && pattern.indexOf('\\') < 0);
+    }
+
+    @ManagedAttribute
+    public int getShipCount() {
+        lock.readLock().lock();
+        try {
+            return size - deleted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the snapshot is read from the primary under the lock, so a write committed meanwhile is applied after it
+    // rather than lost
+    @ManagedOperation
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            List<Ship> ships = ReplicaRoutingDataSource.onPrimary(() -> shipRepository.findAll(Sort.by("id")));
+            clear(Math.max(INITIAL_CAPACITY, ships.size() + ships.size() / 2));
+            versions.clear();
+            for (Ship ship : ships) put(ship);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            if (versions.saved(ship)) put(ship);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            versions.deleted(id);
+            Integer row = rowsById.remove(id);
+            if (row == null) return;
+            live.clear(row);
+            names[row] = null;
+            planets[row] = null;
+            nameKeys[row] = null;
+            planetKeys[row] = null;
+            if (++deleted > INITIAL_CAPACITY && deleted > size / 2) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (enabled) reload();
+    }
+
+    public long count(ShipFilter filter) {
+        lock.readLock().lock();
+        try {
+            return select(filter).length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<ShipView> list(ShipFilter filter, ShipSort sort, ShipCursor cursor, int pageNumber, int pageSize) {
+        lock.readLock().lock();
+        try {
+            int[] rows = select(filter);
+            if (cursor != null) {
+                rows = seek(rows, cursor);
+                pageNumber = 0;
+            }
+            sort(rows, 0, rows.length, sort);
+            int from = (int) Math.min((long) pageNumber * pageSize, rows.length);
+            int to = Math.min(from + pageSize, rows.length);
+            List<ShipView> ships = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) ships.add(toView(rows[i]));
+            return ships;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] select(ShipFilter f) {
+        BitSet candidates = (BitSet) live.clone();
+        if (f.getShipType() != null) {
+            ShipType type = parseShipType(f.getShipType());
+            if (type == null) return new int[0];
+            candidates.and(types[type.ordinal()]);
+        }
+        if (f.getIsUsed() != null) {
+            if (f.getIsUsed()) candidates.and(used);
+            else candidates.andNot(used);
+            candidates.andNot(nullUsed);
+        }
+        if (f.getAfter() != null || f.getBefore() != null) candidates.andNot(nullProdDates);
+        if (f.getMinSpeed() != null || f.getMaxSpeed() != null) candidates.andNot(nullSpeeds);
+        if (f.getMinCrewSize() != null || f.getMaxCrewSize() != null) candidates.andNot(nullCrewSizes);
+        if (f.getMinRating() != null || f.getMaxRating() != null) candidates.andNot(nullRatings);
+
+        String name = f.getName() == null ? null : ShipTextIndex.fold(f.getName());
+        String planet = f.getPlanet() == null ? null : ShipTextIndex.fold(f.getPlanet());
+        int[] rows = new int[candidates.cardinality()];
+        int n = 0;
+        for (int r = candidates.nextSetBit(0); r >= 0; r = candidates.nextSetBit(r + 1)) {
+            if (f.getAfter() != null && prodDates[r] < f.getAfter()) continue;
+            if (f.getBefore() != null && prodDates[r] > f.getBefore()) continue;
+            if (f.getMinSpeed() != null && !(speeds[r] >= f.getMinSpeed())) continue;
+            if (f.getMaxSpeed() != null && !(speeds[r] <= f.getMaxSpeed())) continue;
+            if (f.getMinCrewSize() != null && crewSizes[r] < f.getMinCrewSize()) continue;
+            if (f.getMaxCrewSize() != null && crewSizes[r] > f.getMaxCrewSize()) continue;
+            if (f.getMinRating() != null && !(ratings[r] >= f.getMinRating())) continue;
+            if (f.getMaxRating() != null && !(ratings[r] <= f.getMaxRating())) continue;
+            if (name != null && (nameKeys[r] == null || !nameKeys[r].contains(name))) continue;
+            if (planet != null && (planetKeys[r] == null || !planetKeys[r].contains(planet))) continue;
+            rows[n++] = r;
+        }
+        return n == rows.length ? rows : Arrays.copyOf(rows, n);
+    }
+
+    private int[] seek(int[] rows, ShipCursor cursor) {
+        int n = 0;
+        for (int r : rows) {
+            if (compareToCursor(r, cursor) > 0) rows[n++] = r;
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    private int compareToCursor(int row, ShipCursor cursor) {
+        List<ShipSort.Key> keys = cursor.getSort().getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            ShipOrder field = keys.get(i).getField();
+            Object value = cursor.getValue(i);
+            boolean isNull = nulls(field).get(row);
+            int c;
+            if (isNull || value == null) {
+                c = Boolean.compare(!isNull, value != null);
+            } else if (field == ShipOrder.DATE) {
+                c = Long.compare(prodDates[row], (Long) value);
+            } else {
+                c = Double.compare(field == ShipOrder.SPEED ? speeds[row] : ratings[row], (Double) value);
+            }
+            if (c != 0) return keys.get(i).isDescending() ? -c : c;
+        }
+        int c = Long.compare(ids[row], cursor.getId());
+        return cursor.getSort().isIdDescending() ? -c : c;
+    }
+
+    private static ShipType parseShipType(String value) {
+        try {
+            return ShipType.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // the NULL marker of a sort key's column
+    private BitSet nulls(ShipOrder field) {
+        switch (field) {
+            case SPEED:
+                return nullSpeeds;
+            case DATE:
+                return nullProdDates;
+            default:
+                return nullRatings;
+        }
+    }
+
+    private int compare(int a, int b, ShipSort sort) {
+        for (ShipSort.Key key : sort.getKeys()) {
+            BitSet nulls = nulls(key.getField());
+            boolean aNull = nulls.get(a), bNull = nulls.get(b);
+            int c;
+            if (aNull || bNull) {
+                c = Boolean.compare(!aNull, !bNull);
+            } else {
+                switch (key.getField()) {
+                    case SPEED:
+                        c = Double.compare(speeds[a], speeds[b]);
+                        break;
+                    case DATE:
+                        c = Long.compare(prodDates[a], prodDates[b]);
+                        break;
+                    default:
+                        c = Double.compare(ratings[a], ratings[b]);
+                }
+            }
+            if (c != 0) return key.isDescending() ? -c : c;
+        }
+        int c = Long.compare(ids[a], ids[b]);
+        return sort.isIdDescending() ? -c : c;
+    }
+
+    // quicksort over row numbers, so the columns themselves are never boxed
+    private void sort(int[] rows, int from, int to, ShipSort sort) {
+        while (to - from > 16) {
+            int pivot = rows[(from + to) >>> 1];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (compare(rows[i], pivot, sort) < 0) i++;
+                while (compare(rows[j], pivot, sort) > 0) j--;
+                if (i <= j) {
+                    int t = rows[i];
+                    rows[i++] = rows[j];
+                    rows[j--] = t;
+                }
+            }
+            if (j - from < to - i) {
+                sort(rows, from, j + 1, sort);
+                from = i;
+            } else {
+                sort(rows, i, to, sort);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= from && compare(rows[j], row, sort) > 0) {
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            rows[j + 1] = row;
+        }
+    }
+
+    private ShipView toView(int row) {
+        ShipType shipType = null;
+        for (ShipType type : ShipType.values()) {
+            if (types[type.ordinal()].get(row)) shipType = type;
+        }
+        return new ShipView(ids[row], names[row], planets[row], shipType,
+                nullProdDates.get(row) ? null : new Date(prodDates[row]),
+                nullUsed.get(row) ? null : used.get(row),
+                nullSpeeds.get(row) ? null : speeds[row],
+                nullCrewSizes.get(row) ? null : crewSizes[row],
+                nullRatings.get(row) ? null : ratings[row]);
+    }
+
+    private void put(Ship ship) {
+        Integer row = rowsById.get(ship.getId());
+        if (row == null) {
+            if (size == ids.length) allocate(size * 2);
+            row = size++;
+            rowsById.put(ship.getId(), row);
+            live.set(row);
+        }
+        ids[row] = ship.getId();
+        names[row] = ship.getName();
+        planets[row] = ship.getPlanet();
+        nameKeys[row] = ship.getName() == null ? null : ShipTextIndex.fold(ship.getName());
+        planetKeys[row] = ship.getPlanet() == null ? null : ShipTextIndex.fold(ship.getPlanet());
+        nullProdDates.set(row, ship.getProdDate() == null);
+        prodDates[row] = ship.getProdDate() == null ? 0 : ship.getProdDate().getTime();
+        nullSpeeds.set(row, ship.getSpeed() == null);
+        speeds[row] = ship.getSpeed() == null ? 0 : ship.getSpeed();
+        nullRatings.set(row, ship.getRating() == null);
+        ratings[row] = ship.getRating() == null ? 0 : ship.getRating();
+        nullCrewSizes.set(row, ship.getCrewSize() == null);
+        crewSizes[row] = ship.getCrewSize() == null ? 0 : ship.getCrewSize();
+        // a row without shipType is in no type bitset
+        for (BitSet type : types) type.clear(row);
+        if (ship.getShipType() != null) types[ship.getShipType().ordinal()].set(row);
+        nullUsed.set(row, ship.getIsUsed() == null);
+        used.set(row, Boolean.TRUE.equals(ship.getIsUsed()));
+    }
+
+    private void clear(int capacity) {
+        size = 0;
+        deleted = 0;
+        rowsById.clear();
+        live.clear();
+        used.clear();
+        for (BitSet type : types) type.clear();
+        for (BitSet column : nullColumns) column.clear();
+        ids = null;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        if (ids == null) {
+            ids = new long[capacity];
+            names = new String[capacity];
+            planets = new String[capacity];
+            nameKeys = new String[capacity];
+            planetKeys = new String[capacity];
+            prodDates = new long[capacity];
+            speeds = new double[capacity];
+            ratings = new double[capacity];
+            crewSizes = new int[capacity];
+            return;
+        }
+        ids = Arrays.copyOf(ids, capacity);
+        names = Arrays.copyOf(names, capacity);
+        planets = Arrays.copyOf(planets, capacity);
+        nameKeys = Arrays.copyOf(nameKeys, capacity);
+        planetKeys = Arrays.copyOf(planetKeys, capacity);
+        prodDates = Arrays.copyOf(prodDates, capacity);
+        speeds = Arrays.copyOf(speeds, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        crewSizes = Arrays.copyOf(crewSizes, capacity);
+    }
+
+    private void compact() {
+        int to = 0;
+        for (int from = live.nextSetBit(0); from >= 0; from = live.nextSetBit(from + 1), to++) {
+            ids[to] = ids[from];
+            names[to] = names[from];
+            planets[to] = planets[from];
+            nameKeys[to] = nameKeys[from];
+            planetKeys[to] = planetKeys[from];
+            prodDates[to] = prodDates[from];
+            speeds[to] = speeds[from];
+            ratings[to] = ratings[from];
+            crewSizes[to] = crewSizes[from];
+            for (BitSet type : types) type.set(to, type.get(from));
+            used.set(to, used.get(from));
+            for (BitSet column : nullColumns) column.set(to, column.get(from));
+            rowsById.put(ids[to], to);
+        }
+        Arrays.fill(names, to, size, null);
+        Arrays.fill(planets, to, size, null);
+        Arrays.fill(nameKeys, to, size, null);
+        Arrays.fill(planetKeys, to, size, null);
+        for (BitSet type : types) type.clear(to, size);
+        used.clear(to, size);
+        for (BitSet column : nullColumns) column.clear(to, size);
+        live.clear();
+        live.set(0, to);
+        size = to;
+        deleted = 0;
+    }
+}
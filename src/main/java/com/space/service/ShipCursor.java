@@ -0,0 +1,81 @@
+package com.space.service;
+
+import com.space.model.ShipOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position of the last ship of a page: its sort key values and id, encoded as an opaque token.
+public class ShipCursor {
+    // a NULL column of a legacy row
+    private static final String NULL = "null";
+
+    private final ShipSort sort;
+    private final Object[] values;
+    private final long id;
+
+    private ShipCursor(ShipSort sort, Object[] values, long id) {
+        this.sort = sort;
+        this.values = values;
+        this.id = id;
+    }
+
+    public static ShipCursor after(ShipView ship, ShipSort sort) {
+        Object[] values = new Object[sort.getKeys().size()];
+        for (int i = 0; i < values.length; i++) {
+            switch (sort.getKeys().get(i).getField()) {
+                case SPEED:
+                    values[i] = ship.getSpeed();
+                    break;
+                case DATE:
+                    values[i] = ship.getProdDate() == null ? null : ship.getProdDate().getTime();
+                    break;
+                default:
+                    values[i] = ship.getRating();
+            }
+        }
+        return new ShipCursor(sort, values, ship.getId());
+    }
+
+    public static ShipCursor decode(String token) throws IllegalArgumentException {
+        String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", -1);
+        if (parts.length != 3) throw new IllegalArgumentException("Invalid cursor: " + token);
+        try {
+            ShipSort sort = ShipSort.parse(parts[0]);
+            String[] raw = parts[1].isEmpty() ? new String[0] : parts[1].split(",");
+            if (raw.length != sort.getKeys().size()) throw new IllegalArgumentException("Invalid cursor: " + token);
+            Object[] values = new Object[raw.length];
+            for (int i = 0; i < raw.length; i++) {
+                ShipOrder field = sort.getKeys().get(i).getField();
+                if (raw[i].equals(NULL)) values[i] = null;
+                else values[i] = field == ShipOrder.DATE ? (Object) Long.parseLong(raw[i]) : (Object) Double.parseDouble(raw[i]);
+            }
+            return new ShipCursor(sort, values, Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+        StringBuilder raw = new StringBuilder(sort.toString()).append(':');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) raw.append(',');
+            raw.append(values[i] == null ? NULL : values[i].toString());
+        }
+        raw.append(':').append(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ShipSort getSort() {
+        return sort;
+    }
+
+    // value of the i-th sort key: Double for SPEED and RATING, epoch millis for DATE, null for NULL
+    public Object getValue(int i) {
+        return values[i];
+    }
+
+    public long getId() {
+        return id;
+    }
+}
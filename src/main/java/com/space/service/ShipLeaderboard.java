@@ -0,0 +1,289 @@
+package com.space.service;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Best rated ships (rating descending, then id) of every shipType/isUsed partition, at most size
+ * per partition, kept up to date by every committed write. Requests for the first size ships of
+ * a partition, or of several merged, are answered from memory without going to the database.
+ * A partition always holds its best ships; when a held ship leaves a partition that has more
+ * ships than size, the partition is refilled with one indexed query (shipType, isUsed, rating).
+ * Until then it only answers for as many ships as it still holds.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipLeaderboard")
+public class ShipLeaderboard implements ShipChangeListener, SmartInitializingSingleton {
+    public static final ShipSort BEST = ShipSort.parse("-RATING");
+    // rating DESC puts NULL last, as the refill query does
+    private static final Comparator<ShipView> RANKING = Comparator.comparing(ShipView::getRating,
+            Comparator.nullsLast(Comparator.<Double>reverseOrder())).thenComparingLong(ShipView::getId);
+
+    private static final int REFILL_ATTEMPTS = 3;
+
+    private final boolean enabled;
+    private final int size;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Partition[] partitions = new Partition[ShipType.values().length * 2];
+    private final Map<Long, ShipView> members = new HashMap<>();
+    private final ShipVersions versions = new ShipVersions();
+    private ShipQueryShapes queryShapes;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+
+    public ShipLeaderboard(@Value("${cosmoport.leaderboard.enabled:true}") boolean enabled,
+                           @Value("${cosmoport.leaderboard.size:100}") int size) {
+        this.enabled = enabled;
+        this.size = size;
+        for (int i = 0; i < partitions.length; i++) partitions[i] = new Partition();
+    }
+
+    @Autowired
+    public void setQueryShapes(ShipQueryShapes queryShapes) {
+        this.queryShapes = queryShapes;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) reload();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        return size;
+    }
+
+    @ManagedAttribute
+    public int getShipCount() {
+        lock.readLock().lock();
+        try {
+            return members.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getServed() {
+        return served.sum();
+    }
+
+    @ManagedAttribute
+    public long getRefills() {
+        return refills.sum();
+    }
+
+    @ManagedOperation
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            members.clear();
+            versions.clear();
+            for (Partition partition : partitions) {
+                partition.ships.clear();
+                partition.complete = false;
+                partition.changes++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (ShipType type : ShipType.values()) {
+            refill(type, false);
+            refill(type, true);
+        }
+    }
+
+    /*
+     * The best limit ships of the given shipType and isUsed (null: any), or null when that is
+     * more than the leaderboard keeps. An unknown shipType matches nothing.
+     */
+    public List<ShipView> top(String shipType, Boolean isUsed, int limit) {
+        if (!enabled || limit > size) return null;
+        ShipType type = null;
+        if (shipType != null) {
+            try {
+                type = ShipType.valueOf(shipType);
+            } catch (IllegalArgumentException e) {
+                return new ArrayList<>();
+            }
+        }
+        List<ShipView> ships = new ArrayList<>();
+        int matched = 0;
+        lock.readLock().lock();
+        try {
+            for (ShipType t : ShipType.values()) {
+                if (type != null && t != type) continue;
+                for (boolean used : new boolean[]{false, true}) {
+                    if (isUsed != null && used != isUsed) continue;
+                    Partition partition = partitions[index(t, used)];
+                    // waiting for a refill
+                    if (!partition.complete && partition.ships.size() < limit) return null;
+                    Iterator<ShipView> best = partition.ships.iterator();
+                    for (int i = 0; i < limit && best.hasNext(); i++) ships.add(best.next());
+                    matched++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (matched > 1) {
+            ships.sort(RANKING);
+            if (ships.size() > limit) ships = new ArrayList<>(ships.subList(0, limit));
+        }
+        served.increment();
+        return ships;
+    }
+
+    // a page of ShipService.list when the leaderboard can answer it: BEST order, no other filters
+    public List<ShipView> list(ShipFilter filter, ShipSort sort, int pageNumber, int pageSize) {
+        if (!BEST.equals(sort) || !onlyPartitionFilters(filter)) return null;
+        long end = (long) (pageNumber + 1) * pageSize;
+        if (end > size) return null;
+        List<ShipView> ships = top(filter.getShipType(), filter.getIsUsed(), (int) end);
+        if (ships == null) return null;
+        return new ArrayList<>(ships.subList(Math.min(pageNumber * pageSize, ships.size()), ships.size()));
+    }
+
+    private static boolean onlyPartitionFilters(ShipFilter f) {
+        return f.getName() == null && f.getPlanet() == null && f.getAfter() == null && f.getBefore() == null &&
+                f.getMinSpeed() == null && f.getMaxSpeed() == null && f.getMinCrewSize() == null &&
+                f.getMaxCrewSize() == null && f.getMinRating() == null && f.getMaxRating() == null;
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        if (!enabled) return;
+        ShipView view = ShipView.of(ship);
+        ShipView old;
+        lock.writeLock().lock();
+        try {
+            if (!versions.saved(ship)) return;
+            old = remove(ship.getId());
+            // a legacy row without shipType or isUsed is in no partition
+            Partition partition = view.getShipType() == null || view.getIsUsed() == null ? null : partition(view);
+            // the last ship of a partition that is not complete ranks above every ship it does not hold
+            if (partition != null && (partition.complete
+                    || (!partition.ships.isEmpty() && RANKING.compare(view, partition.ships.last()) < 0))) {
+                add(partition, view);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (old != null) refill(old.getShipType(), old.getIsUsed());
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        if (!enabled) return;
+        ShipView old;
+        lock.writeLock().lock();
+        try {
+            versions.deleted(id);
+            old = remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (old != null) refill(old.getShipType(), old.getIsUsed());
+    }
+
+    @Override
+    public void reset() {
+        if (enabled) reload();
+    }
+
+    private void add(Partition partition, ShipView ship) {
+        partition.changes++;
+        partition.ships.add(ship);
+        members.put(ship.getId(), ship);
+        if (partition.ships.size() > size) {
+            members.remove(partition.ships.pollLast().getId());
+            partition.complete = false;
+        }
+    }
+
+    private ShipView remove(Long id) {
+        ShipView ship = members.remove(id);
+        if (ship != null) {
+            Partition partition = partition(ship);
+            partition.ships.remove(ship);
+            partition.changes++;
+        }
+        return ship;
+    }
+
+    /*
+     * Reads the partition again when the next best ship is not held. The query runs without the
+     * lock, so readers and other writers do not wait for it; its result is swapped in only if no
+     * write was applied to the partition meanwhile, since it could be older than that write, and
+     * otherwise the query is repeated. A partition still short after that is refilled by the next
+     * write that leaves it, and answers from the database until then (see top).
+     */
+    private void refill(ShipType type, boolean used) {
+        Partition partition = partitions[index(type, used)];
+        for (int attempt = 0; attempt < REFILL_ATTEMPTS; attempt++) {
+            long changes;
+            lock.readLock().lock();
+            try {
+                if (partition.complete || partition.ships.size() >= size) return;
+                changes = partition.changes;
+            } finally {
+                lock.readLock().unlock();
+            }
+            ShipFilter filter = new ShipFilter(null, null, type.name(), null, null, used,
+                    null, null, null, null, null, null);
+            TypedQuery<ShipView> query = queryShapes.listQuery(filter, null, BEST, null);
+            List<ShipView> best = ReplicaRoutingDataSource.onPrimary(() -> query.setMaxResults(size + 1).getResultList());
+            lock.writeLock().lock();
+            try {
+                if (partition.changes != changes) continue;
+                for (ShipView ship : partition.ships) members.remove(ship.getId());
+                partition.ships.clear();
+                partition.complete = best.size() <= size;
+                for (ShipView ship : best.subList(0, Math.min(size, best.size()))) {
+                    partition.ships.add(ship);
+                    members.put(ship.getId(), ship);
+                }
+                partition.changes++;
+                refills.increment();
+                return;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Partition partition(ShipView ship) {
+        return partitions[index(ship.getShipType(), ship.getIsUsed())];
+    }
+
+    private static int index(ShipType type, boolean used) {
+        return type.ordinal() * 2 + (used ? 1 : 0);
+    }
+
+    private static class Partition {
+        final TreeSet<ShipView> ships = new TreeSet<>(RANKING);
+        // every ship of the partition is held
+        boolean complete = true;
+        // bumped by every change, so a refill can tell whether its query result is still current
+        long changes;
+    }
+}
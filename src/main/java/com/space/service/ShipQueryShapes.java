@@ -0,0 +1,260 @@
+package com.space.service;
+
+import com.space.model.ShipOrder;
+import com.space.model.ShipType;
+import org.hibernate.FlushMode;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * List and count queries as parameterized JPQL, one string per query shape. A shape is the set of
+ * filters present (a 12 bit mask) plus order, cursor (and which of its values are NULL), text index
+ * candidates and list/count/stats. Each
+ * shape is compiled once; later requests only bind values. Because the JPQL text of a shape never
+ * changes, Hibernate's query plan cache translates it to SQL once as well, and the driver's
+ * statement cache sees one statement per shape.
+ * Lists select ShipView rows rather than entities, and every query is marked read-only
+ * with flush mode MANUAL, so running one neither flushes nor fills the persistence context.
+ * They are also cacheable: with the query cache on (by default only when the result cache is off),
+ * a repeated shape and value set is answered from it until the next write to the ship table.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipQueryShapes")
+public class ShipQueryShapes {
+    private static final int NAME = 1;
+    private static final int PLANET = 1 << 1;
+    private static final int SHIP_TYPE = 1 << 2;
+    private static final int AFTER = 1 << 3;
+    private static final int BEFORE = 1 << 4;
+    private static final int IS_USED = 1 << 5;
+    private static final int MIN_SPEED = 1 << 6;
+    private static final int MAX_SPEED = 1 << 7;
+    private static final int MIN_CREW_SIZE = 1 << 8;
+    private static final int MAX_CREW_SIZE = 1 << 9;
+    private static final int MIN_RATING = 1 << 10;
+    private static final int MAX_RATING = 1 << 11;
+    private static final int CANDIDATES = 1 << 12;
+    private static final int SEEK = 1 << 13;
+    private static final int COUNT = 1 << 14;
+    private static final int STATS = 1 << 15;
+    private static final int ORDER_SHIFT = 16;
+    // one bit per sort key whose cursor value is NULL
+    private static final int SEEK_NULL_SHIFT = 26;
+    private static final String VIEW_SELECT = "SELECT new com.space.service.ShipView(s.id, s.name, s.planet, " +
+            "s.shipType, s.prodDate, s.isUsed, s.speed, s.crewSize, s.rating) FROM Ship s";
+    private static final String STATS_GROUPS = "s.planet, s.shipType, s.isUsed, year(s.prodDate)";
+    private static final String STATS_SELECT = "SELECT new com.space.service.ShipStatsCell(" + STATS_GROUPS +
+            ", count(s.id), count(s.speed), min(s.speed), max(s.speed), sum(s.speed), " +
+            "count(s.rating), min(s.rating), max(s.rating), sum(s.rating), " +
+            "count(s.crewSize), min(s.crewSize), max(s.crewSize), sum(s.crewSize)) FROM Ship s";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final ConcurrentHashMap<Integer, String> shapes = new ConcurrentHashMap<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder compiles = new LongAdder();
+
+    /*
+     * Bound list query without paging, or null when the filter cannot match anything
+     * (unknown shipType or no text index candidates).
+     */
+    public TypedQuery<ShipView> listQuery(ShipFilter filter, Collection<Long> candidates, ShipSort sort, ShipCursor seek) {
+        if (matchesNothing(filter, candidates)) return null;
+        int shape = mask(filter, candidates) | sort.code() << ORDER_SHIFT;
+        if (seek != null) {
+            shape |= SEEK;
+            for (int i = 0; i < sort.getKeys().size(); i++) {
+                if (seek.getValue(i) == null) shape |= 1 << (SEEK_NULL_SHIFT + i);
+            }
+        }
+        TypedQuery<ShipView> query = em.createQuery(jpql(shape), ShipView.class);
+        bind(query, shape, filter, candidates);
+        if (seek != null) {
+            query.setParameter("seekId", seek.getId());
+            for (int i = 0; i < sort.getKeys().size(); i++) {
+                Object value = seek.getValue(i);
+                if (value == null) continue;
+                query.setParameter("seek" + i, sort.getKeys().get(i).getField() == ShipOrder.DATE
+                        ? new Date((Long) value) : value);
+            }
+        }
+        return query;
+    }
+
+    public TypedQuery<Long> countQuery(ShipFilter filter, Collection<Long> candidates) {
+        if (matchesNothing(filter, candidates)) return null;
+        int shape = mask(filter, candidates) | COUNT;
+        TypedQuery<Long> query = em.createQuery(jpql(shape), Long.class);
+        bind(query, shape, filter, candidates);
+        return query;
+    }
+
+    // one row per planet, shipType, isUsed and production year among the matching ships
+    public TypedQuery<ShipStatsCell> statsQuery(ShipFilter filter, Collection<Long> candidates) {
+        if (matchesNothing(filter, candidates)) return null;
+        int shape = mask(filter, candidates) | STATS;
+        TypedQuery<ShipStatsCell> query = em.createQuery(jpql(shape), ShipStatsCell.class);
+        bind(query, shape, filter, candidates);
+        return query;
+    }
+
+    public static boolean matchesNothing(ShipFilter filter, Collection<Long> candidates) {
+        return (candidates != null && candidates.isEmpty())
+                || (filter.getShipType() != null && parseShipType(filter.getShipType()) == null);
+    }
+
+    private String jpql(int shape) {
+        lookups.increment();
+        return shapes.computeIfAbsent(shape, s -> {
+            compiles.increment();
+            return compile(s);
+        });
+    }
+
+    private static String compile(int shape) {
+        StringBuilder jpql = new StringBuilder((shape & COUNT) != 0 ? "SELECT count(s.id) FROM Ship s"
+                : (shape & STATS) != 0 ? STATS_SELECT : VIEW_SELECT);
+        String glue = " WHERE ";
+        String[] conditions = {
+                "s.name LIKE :name",
+                "s.planet LIKE :planet",
+                "s.shipType = :shipType",
+                "s.prodDate >= :after",
+                "s.prodDate <= :before",
+                "s.isUsed = :isUsed",
+                "s.speed >= :minSpeed",
+                "s.speed <= :maxSpeed",
+                "s.crewSize >= :minCrewSize",
+                "s.crewSize <= :maxCrewSize",
+                "s.rating >= :minRating",
+                "s.rating <= :maxRating",
+                "s.id IN :candidates"
+        };
+        for (int bit = 0; bit < conditions.length; bit++) {
+            if ((shape & (1 << bit)) == 0) continue;
+            jpql.append(glue).append(conditions[bit]);
+            glue = " AND ";
+        }
+        if ((shape & COUNT) != 0) return jpql.toString();
+        if ((shape & STATS) != 0) return jpql.append(" GROUP BY ").append(STATS_GROUPS).toString();
+
+        ShipSort sort = ShipSort.decode(shape >>> ORDER_SHIFT);
+        if ((shape & SEEK) != 0) jpql.append(glue).append(seekCondition(sort, shape >>> SEEK_NULL_SHIFT));
+        jpql.append(" ORDER BY ");
+        for (ShipSort.Key key : sort.getKeys()) {
+            jpql.append("s.").append(key.getField().getFieldName()).append(key.isDescending() ? " DESC, " : ", ");
+        }
+        jpql.append(sort.isIdDescending() ? "s.id DESC" : "s.id");
+        return jpql.toString();
+    }
+
+    /*
+     * Rows after the cursor in sort order: the first key is past it, or it ties and the next one is
+     * past it, ... NULL sorts below every value, as in MySQL and H2, so after a NULL key only the
+     * values of an ascending key follow, and after a value a descending key is followed by NULL too.
+     */
+    private static String seekCondition(ShipSort sort, int nulls) {
+        List<ShipSort.Key> keys = sort.getKeys();
+        String idAfter = "s.id " + (sort.isIdDescending() ? "<" : ">") + " :seekId";
+        if (keys.isEmpty()) return idAfter;
+        StringBuilder condition = new StringBuilder("(");
+        StringBuilder ties = new StringBuilder();
+        for (int i = 0; i <= keys.size(); i++) {
+            String after = idAfter;
+            String field = null;
+            boolean isNull = (nulls & 1 << i) != 0;
+            if (i < keys.size()) {
+                field = "s." + keys.get(i).getField().getFieldName();
+                boolean descending = keys.get(i).isDescending();
+                if (isNull) after = descending ? null : field + " IS NOT NULL";
+                else if (descending) after = "(" + field + " < :seek" + i + " OR " + field + " IS NULL)";
+                else after = field + " > :seek" + i;
+            }
+            if (after != null) {
+                if (condition.length() > 1) condition.append(" OR ");
+                condition.append(ties.length() == 0 ? after : "(" + ties + after + ")");
+            }
+            if (field != null) ties.append(field).append(isNull ? " IS NULL" : " = :seek" + i).append(" AND ");
+        }
+        return condition.append(")").toString();
+    }
+
+    private static int mask(ShipFilter f, Collection<Long> candidates) {
+        int mask = 0;
+        if (f.getName() != null) mask |= NAME;
+        if (f.getPlanet() != null) mask |= PLANET;
+        if (f.getShipType() != null) mask |= SHIP_TYPE;
+        if (f.getAfter() != null) mask |= AFTER;
+        if (f.getBefore() != null) mask |= BEFORE;
+        if (f.getIsUsed() != null) mask |= IS_USED;
+        if (f.getMinSpeed() != null) mask |= MIN_SPEED;
+        if (f.getMaxSpeed() != null) mask |= MAX_SPEED;
+        if (f.getMinCrewSize() != null) mask |= MIN_CREW_SIZE;
+        if (f.getMaxCrewSize() != null) mask |= MAX_CREW_SIZE;
+        if (f.getMinRating() != null) mask |= MIN_RATING;
+        if (f.getMaxRating() != null) mask |= MAX_RATING;
+        if (candidates != null) mask |= CANDIDATES;
+        return mask;
+    }
+
+    private static void bind(TypedQuery<?> query, int shape, ShipFilter f, Collection<Long> candidates) {
+        query.setHint(QueryHints.READ_ONLY, true);
+        query.setHint(QueryHints.FLUSH_MODE, FlushMode.MANUAL);
+        // only takes effect with hibernate.cache.use_query_cache
+        query.setHint(QueryHints.CACHEABLE, true);
+        if ((shape & NAME) != 0) query.setParameter("name", "%" + f.getName() + "%");
+        if ((shape & PLANET) != 0) query.setParameter("planet", "%" + f.getPlanet() + "%");
+        if ((shape & SHIP_TYPE) != 0) query.setParameter("shipType", ShipType.valueOf(f.getShipType()));
+        if ((shape & AFTER) != 0) query.setParameter("after", new Date(f.getAfter()));
+        if ((shape & BEFORE) != 0) query.setParameter("before", new Date(f.getBefore()));
+        if ((shape & IS_USED) != 0) query.setParameter("isUsed", f.getIsUsed());
+        if ((shape & MIN_SPEED) != 0) query.setParameter("minSpeed", f.getMinSpeed());
+        if ((shape & MAX_SPEED) != 0) query.setParameter("maxSpeed", f.getMaxSpeed());
+        if ((shape & MIN_CREW_SIZE) != 0) query.setParameter("minCrewSize", f.getMinCrewSize());
+        if ((shape & MAX_CREW_SIZE) != 0) query.setParameter("maxCrewSize", f.getMaxCrewSize());
+        if ((shape & MIN_RATING) != 0) query.setParameter("minRating", f.getMinRating());
+        if ((shape & MAX_RATING) != 0) query.setParameter("maxRating", f.getMaxRating());
+        if ((shape & CANDIDATES) != 0) query.setParameter("candidates", candidates);
+    }
+
+    private static ShipType parseShipType(String value) {
+        try {
+            return ShipType.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @ManagedAttribute
+    public int getShapeCount() {
+        return shapes.size();
+    }
+
+    @ManagedAttribute
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @ManagedAttribute
+    public long getCompiles() {
+        return compiles.sum();
+    }
+
+    @ManagedAttribute
+    public double getHitRatio() {
+        long lookups = this.lookups.sum();
+        return lookups == 0 ? 0 : (double) (lookups - compiles.sum()) / lookups;
+    }
+}
@@ -1,10 +1,32 @@
 package com.space.service;
 
 import com.space.model.Ship;
+import org.springframework.dao.OptimisticLockingFailureException;
 
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface ShipService {
     Ship findById(Long id);
     Ship save(Ship ship);
     void delete(Ship ship);
+
+    // single statement writes: no read before the write; null / false when the ship does not exist.
+    // expectedVersion (may be null) makes the update conditional, see OptimisticLockingFailureException
+    Ship update(Long id, ShipUpdate changes, Long expectedVersion) throws OptimisticLockingFailureException;
+    boolean deleteById(Long id);
+
+    // batch operations run in one transaction each and are sent to the database as JDBC batches
+    List<Ship> createAll(List<Ship> ships);
+    Map<Long, Ship> updateAll(Map<Long, Consumer<Ship>> updates);
+    List<Long> deleteAll(List<Long> ids);
+
+    // read-only queries returning ShipView rows; with a cursor the page number is ignored
+    List<ShipView> list(ShipFilter filter, ShipSort sort, ShipCursor seek, int pageNumber, int pageSize);
+    long count(ShipFilter filter);
+    // streams every matching ship to sink in order and returns how many there were
+    long export(ShipFilter filter, ShipSort sort, Consumer<ShipView> sink);
+    // counts and min/max/avg overall, per planet, shipType and isUsed, and per production year
+    ShipStats stats(ShipFilter filter);
 }
@@ -2,38 +2,338 @@ package com.space.service;
 
 import com.space.model.Ship;
 import com.space.repository.ShipRepository;
+import com.space.util.ShipUtil;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.*;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Service("jpaShipService")
 @Transactional
 public class ShipServiceImpl implements ShipService {
+    private static final String INSERT_SQL = "INSERT INTO ship (name, planet, shipType, prodDate, isUsed, speed, " +
+            "crewSize, rating) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM ship WHERE id = ?";
+
+    @PersistenceContext
+    private EntityManager em;
+    @Value("${cosmoport.batch.jdbc-batch-size:500}")
+    private int batchSize;
+    @Value("${cosmoport.export.fetch-size:1000}")
+    private int exportFetchSize;
     private ShipRepository shipRepository;
+    private ShipCache shipCache;
+    private ShipQueryShapes queryShapes;
+    private ShipTextIndex textIndex;
+    private List<ShipChangeListener> listeners = Collections.emptyList();
 
     @Autowired
     public void setShipRepository(ShipRepository shipRepository) {
         this.shipRepository = shipRepository;
     }
 
+    @Autowired
+    public void setShipCache(ShipCache shipCache) {
+        this.shipCache = shipCache;
+    }
 
+    @Autowired
+    public void setQueryShapes(ShipQueryShapes queryShapes) {
+        this.queryShapes = queryShapes;
+    }
+
+    @Autowired
+    public void setTextIndex(ShipTextIndex textIndex) {
+        this.textIndex = textIndex;
+    }
+
+    @Autowired(required = false)
+    public void setListeners(List<ShipChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+
+    // no transaction of its own: a cache hit must not check out a connection
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Ship findById(Long id) {
-        return shipRepository.findById(id).orElse(null);
+        Ship cached = shipCache.get(id);
+        if (cached != null) return cached;
+        long generation = shipCache.generation();
+        Ship ship = shipRepository.findById(id).orElse(null);
+        if (ship != null) shipCache.put(ship, generation);
+        return ship;
     }
 
     @Override
     public Ship save(Ship ship) {
-        return shipRepository.save(ship);
+        Ship saved = shipRepository.save(ship);
+        writing(Collections.singletonList(saved.getId()));
+        afterCommit(() -> listeners.forEach(l -> l.shipSaved(saved)));
+        return saved;
     }
 
     @Override
     public void delete(Ship ship) {
         shipRepository.delete(ship);
+        Long id = ship.getId();
+        afterCommit(() -> listeners.forEach(l -> l.shipDeleted(id)));
+    }
+
+    /*
+     * One UPDATE with only the given columns; rating is recomputed by the database from the new or
+     * current speed, prodDate and isUsed with the same formula as ShipUtil.calculateRating
+     * (Math.round(x) written as floor(x + 0.5)). The version is bumped in the same statement and,
+     * given an expected version, also checked there. The ship is read back for the response.
+     */
+    @Override
+    public Ship update(Long id, ShipUpdate changes, Long expectedVersion) throws OptimisticLockingFailureException {
+        StringBuilder jpql = new StringBuilder("UPDATE Ship s SET ");
+        Map<String, Object> params = new HashMap<>();
+        set(jpql, params, "name", changes.getName());
+        set(jpql, params, "planet", changes.getPlanet());
+        set(jpql, params, "shipType", changes.getShipType());
+        set(jpql, params, "prodDate", changes.getProdDate());
+        set(jpql, params, "isUsed", changes.getIsUsed());
+        set(jpql, params, "speed", changes.getSpeed());
+        set(jpql, params, "crewSize", changes.getCrewSize());
+
+        // coalesce gives the parameter the column's type; a bare "80 * ?" is bound as an integer by H2.
+        // year and k are derived values, not client input, so they can be inlined as literals
+        String speed = changes.getSpeed() != null ? "coalesce(:speed, s.speed)" : "s.speed";
+        String year = changes.getProdDate() != null
+                ? String.valueOf(ShipUtil.getYear(changes.getProdDate().getTime()))
+                : "year(s.prodDate)";
+        String k = changes.getIsUsed() != null
+                ? (changes.getIsUsed() ? "0.5" : "1.0")
+                : "(case when s.isUsed = true then 0.5 else 1.0 end)";
+        jpql.append("s.rating = floor(80 * ").append(speed).append(" * ").append(k)
+                .append(" / (").append(ShipUtil.CURRENT_YEAR).append(" - ").append(year)
+                .append(" + 1) * 100 + 0.5) / 100.0, s.version = s.version + 1 WHERE s.id = :id");
+        params.put("id", id);
+        if (expectedVersion != null) {
+            jpql.append(" AND s.version = :version");
+            params.put("version", expectedVersion);
+        }
+
+        Query query = em.createQuery(jpql.toString());
+        params.forEach(query::setParameter);
+        if (query.executeUpdate() == 0) {
+            if (expectedVersion != null && em.find(Ship.class, id) != null) {
+                throw new OptimisticLockingFailureException("Ship " + id + " is no longer at version " + expectedVersion);
+            }
+            return null;
+        }
+
+        Ship updated = em.createQuery("SELECT s FROM Ship s WHERE s.id = :id", Ship.class)
+                .setParameter("id", id)
+                .getSingleResult();
+        writing(Collections.singletonList(id));
+        afterCommit(() -> listeners.forEach(l -> l.shipSaved(updated)));
+        return updated;
+    }
+
+    private static void set(StringBuilder jpql, Map<String, Object> params, String field, Object value) {
+        if (value == null) return;
+        jpql.append("s.").append(field).append(" = :").append(field).append(", ");
+        params.put(field, value);
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        int deleted = em.createQuery("DELETE FROM Ship s WHERE s.id = :id")
+                .setParameter("id", id)
+                .executeUpdate();
+        if (deleted == 0) return false;
+        afterCommit(() -> listeners.forEach(l -> l.shipDeleted(id)));
+        return true;
+    }
+
+    /*
+     * Ship ids are IDENTITY columns, which keeps Hibernate from batching inserts, so new ships
+     * are written with a plain JDBC batch on the transaction's connection. The driver hands back
+     * the generated keys of the whole batch (with rewriteBatchedStatements Connector/J sends it
+     * as one multi-row INSERT).
+     */
+    @Override
+    public List<Ship> createAll(List<Ship> ships) {
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < ships.size(); from += batchSize) {
+                    List<Ship> chunk = ships.subList(from, Math.min(from + batchSize, ships.size()));
+                    for (Ship ship : chunk) {
+                        ps.setString(1, ship.getName());
+                        ps.setString(2, ship.getPlanet());
+                        ps.setString(3, ship.getShipType().name());
+                        ps.setDate(4, new java.sql.Date(ship.getProdDate().getTime()));
+                        ps.setBoolean(5, ship.getIsUsed());
+                        ps.setDouble(6, ship.getSpeed());
+                        ps.setInt(7, ship.getCrewSize());
+                        if (ship.getRating() == null) ps.setNull(8, Types.DOUBLE);
+                        else ps.setDouble(8, ship.getRating());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        for (Ship ship : chunk) {
+                            if (!keys.next()) throw new IllegalStateException("Missing generated key for " + ship);
+                            ship.setId(keys.getLong(1));
+                            ship.setVersion(0L);
+                        }
+                    }
+                }
+            }
+        });
+        List<Ship> created = new ArrayList<>(ships);
+        List<Long> ids = new ArrayList<>(created.size());
+        for (Ship ship : created) ids.add(ship.getId());
+        writing(ids);
+        afterCommit(() -> {
+            evictFromHibernateCache(Collections.emptyList());
+            created.forEach(ship -> listeners.forEach(l -> l.shipSaved(ship)));
+        });
+        return ships;
+    }
+
+    // ships are loaded with one IN query per chunk; the updates are batched by hibernate.jdbc.batch_size
+    @Override
+    public Map<Long, Ship> updateAll(Map<Long, Consumer<Ship>> updates) {
+        List<Long> ids = new ArrayList<>(updates.keySet());
+        Map<Long, Ship> updated = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            for (Ship ship : shipRepository.findAllById(ids.subList(from, Math.min(from + batchSize, ids.size())))) {
+                updates.get(ship.getId()).accept(ship);
+                updated.put(ship.getId(), ship);
+            }
+        }
+        em.flush();
+        List<Ship> saved = new ArrayList<>(updated.values());
+        writing(new ArrayList<>(updated.keySet()));
+        afterCommit(() -> saved.forEach(ship -> listeners.forEach(l -> l.shipSaved(ship))));
+        return updated;
+    }
+
+    // ids that did not exist are left out of the result
+    @Override
+    public List<Long> deleteAll(List<Long> ids) {
+        List<Long> deleted = new ArrayList<>();
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(DELETE_SQL)) {
+                for (int from = 0; from < ids.size(); from += batchSize) {
+                    List<Long> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                    for (Long id : chunk) {
+                        ps.setLong(1, id);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0) deleted.add(chunk.get(i));
+                    }
+                }
+            }
+        });
+        afterCommit(() -> {
+            evictFromHibernateCache(deleted);
+            deleted.forEach(id -> listeners.forEach(l -> l.shipDeleted(id)));
+        });
+        return deleted;
+    }
+
+    // the JDBC batches bypass Hibernate, so its second-level and query caches are told by hand
+    private void evictFromHibernateCache(Collection<Long> ids) {
+        org.hibernate.Cache cache = em.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+        for (Long id : ids) cache.evictEntityData(Ship.class, id);
+        cache.evictQueryRegions();
+    }
+
+    /*
+     * Reads run in read-only transactions: Hibernate switches the session to flush mode MANUAL
+     * and the queries select ShipView rows, so nothing is dirty-checked or kept in the session.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ShipView> list(ShipFilter filter, ShipSort sort, ShipCursor seek, int pageNumber, int pageSize) {
+        TypedQuery<ShipView> query = queryShapes.listQuery(filter, textIndex.candidates(filter), sort, seek);
+        if (query == null) return new ArrayList<>();
+        if (seek != null) pageNumber = 0;
+        return query.setFirstResult(pageNumber * pageSize).setMaxResults(pageSize).getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long count(ShipFilter filter) {
+        TypedQuery<Long> query = queryShapes.countQuery(filter, textIndex.candidates(filter));
+        return query == null ? 0 : query.getSingleResult();
+    }
+
+    // a single grouped query; ShipStats rolls its rows up into the facets
+    @Override
+    @Transactional(readOnly = true)
+    public ShipStats stats(ShipFilter filter) {
+        TypedQuery<ShipStatsCell> query = queryShapes.statsQuery(filter, textIndex.candidates(filter));
+        return ShipStats.of(query == null ? Collections.emptyList() : query.getResultList());
+    }
+
+    // a forward-only scroll with a driver fetch size, so memory stays flat however many ships match
+    @Override
+    @Transactional(readOnly = true)
+    public long export(ShipFilter filter, ShipSort sort, Consumer<ShipView> sink) {
+        TypedQuery<ShipView> query = queryShapes.listQuery(filter, textIndex.candidates(filter), sort, null);
+        if (query == null) return 0;
+        org.hibernate.query.Query<?> exportQuery = query.unwrap(org.hibernate.query.Query.class);
+        exportQuery.setFetchSize(exportFetchSize);
+        long count = 0;
+        try (ScrollableResults scroll = exportQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (scroll.next()) {
+                sink.accept((ShipView) scroll.get(0));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // until the listeners have seen the commit, the text index has to treat these ships as candidates
+    private void writing(Collection<Long> ids) {
+        if (!textIndex.isEnabled() || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+        textIndex.writing(ids);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                textIndex.written(ids);
+            }
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 }
@@ -0,0 +1,133 @@
+package com.space.service;
+
+import com.space.model.ShipOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/*
+ * Order of a list request: up to three of speed, prodDate and rating, each ascending or descending,
+ * then id as the tie breaker. Written as in the order parameter, e.g. "-RATING,SPEED" (rating
+ * descending, then speed); a plain ShipOrder name is a single ascending key. Ordering stops at ID,
+ * so "-ID" orders by id descending.
+ */
+public final class ShipSort {
+    public static final ShipSort ID = new ShipSort(Collections.emptyList(), false);
+
+    private static final int KEY_BITS = 3;
+    private static final int MAX_KEYS = 3;
+
+    private final List<Key> keys;
+    private final boolean idDescending;
+
+    private ShipSort(List<Key> keys, boolean idDescending) {
+        this.keys = keys;
+        this.idDescending = idDescending;
+    }
+
+    public static ShipSort of(ShipOrder order) {
+        return parse(order.name());
+    }
+
+    // keys repeating an earlier field are ignored
+    public static ShipSort parse(String order) throws IllegalArgumentException {
+        List<Key> keys = new ArrayList<>(MAX_KEYS);
+        for (String token : order.split(",")) {
+            token = token.trim();
+            boolean descending = token.startsWith("-");
+            ShipOrder field = ShipOrder.valueOf(descending ? token.substring(1) : token);
+            if (field == ShipOrder.ID) return new ShipSort(keys, descending);
+            if (keys.stream().noneMatch(key -> key.field == field)) keys.add(new Key(field, descending));
+        }
+        return new ShipSort(keys, false);
+    }
+
+    // a small int identifying the sort, for query shape masks
+    public int code() {
+        int code = idDescending ? 1 << (KEY_BITS * MAX_KEYS) : 0;
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            code |= (key.field.ordinal() | (key.descending ? 4 : 0)) << (KEY_BITS * i);
+        }
+        return code;
+    }
+
+    public static ShipSort decode(int code) {
+        List<Key> keys = new ArrayList<>(MAX_KEYS);
+        for (int i = 0; i < MAX_KEYS; i++) {
+            int bits = code >>> (KEY_BITS * i) & 7;
+            if (bits == 0) break;
+            keys.add(new Key(ShipOrder.values()[bits & 3], (bits & 4) != 0));
+        }
+        return new ShipSort(keys, (code & 1 << (KEY_BITS * MAX_KEYS)) != 0);
+    }
+
+    // fields before the id, never ID itself
+    public List<Key> getKeys() {
+        return keys;
+    }
+
+    public boolean isIdDescending() {
+        return idDescending;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShipSort that = (ShipSort) o;
+        return idDescending == that.idDescending && keys.equals(that.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keys, idDescending);
+    }
+
+    // parses back to an equal sort
+    @Override
+    public String toString() {
+        StringBuilder order = new StringBuilder();
+        for (Key key : keys) order.append(key).append(',');
+        if (idDescending) return order.append("-ID").toString();
+        return keys.isEmpty() ? ShipOrder.ID.name() : order.substring(0, order.length() - 1);
+    }
+
+    public static final class Key {
+        private final ShipOrder field;
+        private final boolean descending;
+
+        Key(ShipOrder field, boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+
+        public ShipOrder getField() {
+            return field;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return field == key.field && descending == key.descending;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, descending);
+        }
+
+        @Override
+        public String toString() {
+            return (descending ? "-" : "") + field.name();
+        }
+    }
+}
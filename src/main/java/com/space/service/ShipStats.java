@@ -0,0 +1,109 @@
+package com.space.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/*
+ * Fleet statistics returned by /rest/ships/stats: totals over all matching ships, the same
+ * figures per planet, shipType and isUsed, and a histogram by production year. Built by rolling
+ * up ShipStatsCells, so one grouped query (or one pass over the kept aggregates) serves every facet.
+ * Planets are told apart case and accent insensitively, like utf8_general_ci does: the kept
+ * aggregates hold one cell per exact spelling, and so does a grouped query under a case
+ * sensitive collation, while MySQL already merges them. Either way "Mars" and "mars" end up in
+ * one facet, shown with the spelling that sorts first.
+ */
+public class ShipStats {
+    public final Facet total;
+    public final List<Facet> planets;
+    public final List<Facet> shipTypes;
+    public final List<Facet> isUsed;
+    public final List<Facet> years;
+
+    private ShipStats(Facet total, List<Facet> planets, List<Facet> shipTypes, List<Facet> isUsed, List<Facet> years) {
+        this.total = total;
+        this.planets = planets;
+        this.shipTypes = shipTypes;
+        this.isUsed = isUsed;
+        this.years = years;
+    }
+
+    public static ShipStats of(Collection<ShipStatsCell> cells) {
+        Facet total = new Facet(null);
+        for (ShipStatsCell cell : cells) total.add(cell);
+        return new ShipStats(total,
+                facets(cells, planets(cells)),
+                facets(cells, ShipStatsCell::getShipType),
+                facets(cells, ShipStatsCell::getIsUsed),
+                facets(cells, ShipStatsCell::getYear));
+    }
+
+    // one facet per distinct value, in natural order with null (not set) first
+    private static <T extends Comparable<? super T>> List<Facet> facets(Collection<ShipStatsCell> cells,
+                                                                       Function<ShipStatsCell, T> key) {
+        Map<T, Facet> facets = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (ShipStatsCell cell : cells) {
+            T value = key.apply(cell);
+            facets.computeIfAbsent(value, Facet::new).add(cell);
+        }
+        return new ArrayList<>(facets.values());
+    }
+
+    // folded planet -> the spelling its facet is shown with
+    private static Function<ShipStatsCell, String> planets(Collection<ShipStatsCell> cells) {
+        Map<String, String> spellings = new HashMap<>();
+        for (ShipStatsCell cell : cells) {
+            if (cell.getPlanet() == null) continue;
+            spellings.merge(ShipTextIndex.fold(cell.getPlanet()), cell.getPlanet(),
+                    (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        return cell -> cell.getPlanet() == null ? null : spellings.get(ShipTextIndex.fold(cell.getPlanet()));
+    }
+
+    public static class Facet {
+        public final Object value;
+        public long count;
+        public final Summary speed = new Summary();
+        public final Summary rating = new Summary();
+        public final Summary crewSize = new Summary();
+
+        Facet(Object value) {
+            this.value = value;
+        }
+
+        void add(ShipStatsCell cell) {
+            count += cell.getCount();
+            speed.add(cell.getCountSpeed(), cell.getMinSpeed(), cell.getMaxSpeed(), cell.getSumSpeed());
+            rating.add(cell.getCountRating(), cell.getMinRating(), cell.getMaxRating(), cell.getSumRating());
+            crewSize.add(cell.getCountCrewSize(), toDouble(cell.getMinCrewSize()), toDouble(cell.getMaxCrewSize()),
+                    cell.getSumCrewSize());
+        }
+    }
+
+    // min, max and mean over the ships that have a value; all null when none has
+    public static class Summary {
+        public Double min;
+        public Double max;
+        public Double avg;
+        private transient long count;
+        private transient double sum;
+
+        void add(long count, Double min, Double max, double sum) {
+            if (min == null) return;
+            this.min = this.min == null ? min : Math.min(this.min, min);
+            this.max = this.max == null ? max : Math.max(this.max, max);
+            this.count += count;
+            this.sum += sum;
+            avg = this.sum / this.count;
+        }
+    }
+
+    private static Double toDouble(Integer value) {
+        return value == null ? null : value.doubleValue();
+    }
+}
@@ -0,0 +1,120 @@
+package com.space.service;
+
+import com.space.model.ShipType;
+
+/*
+ * Count of the ships sharing one planet, shipType, isUsed and production year, with the count,
+ * min, max and sum of the non-null values of their speed, rating and crewSize: one row of the
+ * grouped stats query, or one incrementally kept group of ShipAggregates. ShipStats rolls cells
+ * up into facets.
+ */
+public class ShipStatsCell {
+    private final String planet;
+    private final ShipType shipType;
+    private final Boolean isUsed;
+    private final Integer year;
+    private final long count;
+    private final long countSpeed;
+    private final Double minSpeed;
+    private final Double maxSpeed;
+    private final double sumSpeed;
+    private final long countRating;
+    private final Double minRating;
+    private final Double maxRating;
+    private final double sumRating;
+    private final long countCrewSize;
+    private final Integer minCrewSize;
+    private final Integer maxCrewSize;
+    private final long sumCrewSize;
+
+    public ShipStatsCell(String planet, ShipType shipType, Boolean isUsed, Integer year, Long count,
+                         Long countSpeed, Double minSpeed, Double maxSpeed, Double sumSpeed,
+                         Long countRating, Double minRating, Double maxRating, Double sumRating,
+                         Long countCrewSize, Integer minCrewSize, Integer maxCrewSize, Long sumCrewSize) {
+        this.planet = planet;
+        this.shipType = shipType;
+        this.isUsed = isUsed;
+        this.year = year;
+        this.count = count;
+        this.countSpeed = countSpeed;
+        this.minSpeed = minSpeed;
+        this.maxSpeed = maxSpeed;
+        this.sumSpeed = sumSpeed == null ? 0 : sumSpeed;
+        this.countRating = countRating;
+        this.minRating = minRating;
+        this.maxRating = maxRating;
+        this.sumRating = sumRating == null ? 0 : sumRating;
+        this.countCrewSize = countCrewSize;
+        this.minCrewSize = minCrewSize;
+        this.maxCrewSize = maxCrewSize;
+        this.sumCrewSize = sumCrewSize == null ? 0 : sumCrewSize;
+    }
+
+    public String getPlanet() {
+        return planet;
+    }
+
+    public ShipType getShipType() {
+        return shipType;
+    }
+
+    public Boolean getIsUsed() {
+        return isUsed;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getCountSpeed() {
+        return countSpeed;
+    }
+
+    public Double getMinSpeed() {
+        return minSpeed;
+    }
+
+    public Double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public double getSumSpeed() {
+        return sumSpeed;
+    }
+
+    public long getCountRating() {
+        return countRating;
+    }
+
+    public Double getMinRating() {
+        return minRating;
+    }
+
+    public Double getMaxRating() {
+        return maxRating;
+    }
+
+    public double getSumRating() {
+        return sumRating;
+    }
+
+    public long getCountCrewSize() {
+        return countCrewSize;
+    }
+
+    public Integer getMinCrewSize() {
+        return minCrewSize;
+    }
+
+    public Integer getMaxCrewSize() {
+        return maxCrewSize;
+    }
+
+    public long getSumCrewSize() {
+        return sumCrewSize;
+    }
+}
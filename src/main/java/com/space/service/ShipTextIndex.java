@@ -0,0 +1,249 @@
+package com.space.service;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import com.space.model.Ship;
+import com.space.repository.ShipRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/*
+ * Trigram index over Ship.name and Ship.planet. It only narrows the candidate ids of a
+ * LIKE '%x%' filter; the database still evaluates the LIKE itself, so results are exactly
+ * what the plain query returns. Text is case and accent folded before indexing, which makes
+ * the candidate set a superset for both case sensitive and utf8_general_ci comparisons.
+ * Values that are still not plain ASCII after folding are always returned as candidates,
+ * since the collation may treat them as equal to other letters. So are the ids ShipService is
+ * writing: between a rename's commit and its shipSaved the postings still hold the old name.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipTextIndex")
+public class ShipTextIndex implements ShipChangeListener, SmartInitializingSingleton {
+    private static final int GRAM = 3;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final boolean enabled;
+    private final int maxCandidates;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ShipRepository shipRepository;
+
+    private final Map<Long, BitSet> namePostings = new HashMap<>();
+    private final Map<Long, BitSet> planetPostings = new HashMap<>();
+    private final BitSet nameUnfolded = new BitSet();
+    private final BitSet planetUnfolded = new BitSet();
+    private final Map<Long, String[]> indexed = new HashMap<>();
+    // set once an id does not fit the BitSet postings; the index then stops narrowing
+    private boolean overflow;
+    // id -> number of transactions writing it whose change has not been applied here yet
+    private final ConcurrentHashMap<Long, Integer> writing = new ConcurrentHashMap<>();
+
+    public ShipTextIndex(@Value("${cosmoport.text-index.enabled:false}") boolean enabled,
+                         @Value("${cosmoport.text-index.max-candidates:1000}") int maxCandidates) {
+        this.enabled = enabled;
+        this.maxCandidates = maxCandidates;
+    }
+
+    @Autowired
+    public void setShipRepository(ShipRepository shipRepository) {
+        this.shipRepository = shipRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) reload();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public int getTrigramCount() {
+        lock.readLock().lock();
+        try {
+            return namePostings.size() + planetPostings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the snapshot is read from the primary under the lock, so a write committed meanwhile is applied after it
+    // rather than lost
+    @ManagedOperation
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            List<Ship> ships = ReplicaRoutingDataSource.onPrimary(() -> shipRepository.findAll());
+            namePostings.clear();
+            planetPostings.clear();
+            nameUnfolded.clear();
+            planetUnfolded.clear();
+            indexed.clear();
+            overflow = false;
+            for (Ship ship : ships) put(ship);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void shipSaved(Ship ship) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            put(ship);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void shipDeleted(Long id) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (enabled) reload();
+    }
+
+    // called by ShipService before a transaction that writes these ships commits
+    public void writing(Collection<Long> ids) {
+        if (!enabled) return;
+        for (Long id : ids) writing.merge(id, 1, Integer::sum);
+    }
+
+    // called once that transaction has completed, after its shipSaved calls
+    public void written(Collection<Long> ids) {
+        if (!enabled) return;
+        for (Long id : ids) writing.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /*
+     * Ids that can match the name and planet filters, or null when the index cannot
+     * narrow the search (disabled, no usable pattern, or more than max-candidates ids).
+     */
+    public Collection<Long> candidates(ShipFilter filter) {
+        if (!enabled) return null;
+        lock.readLock().lock();
+        try {
+            if (overflow) return null;
+            BitSet names = lookup(namePostings, nameUnfolded, filter.getName());
+            BitSet planets = lookup(planetPostings, planetUnfolded, filter.getPlanet());
+            BitSet ids;
+            if (names == null) ids = planets;
+            else if (planets == null) ids = names;
+            else {
+                ids = (BitSet) names.clone();
+                ids.and(planets);
+            }
+            if (ids == null) return null;
+            for (Long id : writing.keySet()) {
+                if (id > Integer.MAX_VALUE) return null;
+                ids.set(id.intValue());
+            }
+            if (ids.cardinality() > maxCandidates) return null;
+
+            List<Long> result = new ArrayList<>(ids.cardinality());
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) result.add((long) id);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static BitSet lookup(Map<Long, BitSet> postings, BitSet unfolded, String pattern) {
+        if (pattern == null || pattern.indexOf('%') >= 0 || pattern.indexOf('_') >= 0 || pattern.indexOf('\\') >= 0) {
+            return null;
+        }
+        String text = fold(pattern);
+        if (text.length() < GRAM || !isAscii(text)) return null;
+
+        BitSet ids = null;
+        for (long gram : grams(text)) {
+            BitSet posting = postings.get(gram);
+            if (posting == null) {
+                ids = new BitSet();
+                break;
+            }
+            if (ids == null) ids = (BitSet) posting.clone();
+            else ids.and(posting);
+            if (ids.isEmpty()) break;
+        }
+        ids.or(unfolded);
+        return ids;
+    }
+
+    private void put(Ship ship) {
+        long id = ship.getId();
+        if (id > Integer.MAX_VALUE) {
+            overflow = true;
+            return;
+        }
+        remove(id);
+        String name = ship.getName() == null ? "" : fold(ship.getName());
+        String planet = ship.getPlanet() == null ? "" : fold(ship.getPlanet());
+        for (long gram : grams(name)) namePostings.computeIfAbsent(gram, g -> new BitSet()).set((int) id);
+        for (long gram : grams(planet)) planetPostings.computeIfAbsent(gram, g -> new BitSet()).set((int) id);
+        nameUnfolded.set((int) id, !isAscii(name));
+        planetUnfolded.set((int) id, !isAscii(planet));
+        indexed.put(id, new String[]{name, planet});
+    }
+
+    private void remove(long id) {
+        String[] old = indexed.remove(id);
+        if (old == null) return;
+        unset(namePostings, old[0], (int) id);
+        unset(planetPostings, old[1], (int) id);
+        nameUnfolded.clear((int) id);
+        planetUnfolded.clear((int) id);
+    }
+
+    private static void unset(Map<Long, BitSet> postings, String text, int id) {
+        for (long gram : grams(text)) {
+            BitSet posting = postings.get(gram);
+            if (posting == null) continue;
+            posting.clear(id);
+            if (posting.isEmpty()) postings.remove(gram);
+        }
+    }
+
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    // per character, so that a substring of the original is still a substring of the folded text
+    static String fold(String text) {
+        char[] chars = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toCharArray();
+        for (int i = 0; i < chars.length; i++) chars[i] = Character.toLowerCase(chars[i]);
+        return new String(chars);
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7f) return false;
+        }
+        return true;
+    }
+}
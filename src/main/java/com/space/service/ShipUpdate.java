@@ -0,0 +1,68 @@
+package com.space.service;
+
+import com.space.model.ShipType;
+
+import java.util.Date;
+
+// Fields to change on one ship; null means "keep the current value".
+public class ShipUpdate {
+    private final String name;
+    private final String planet;
+    private final ShipType shipType;
+    private final Date prodDate;
+    private final Boolean isUsed;
+    private final Double speed;
+    private final Integer crewSize;
+
+    public ShipUpdate(String name, String planet, ShipType shipType, Date prodDate,
+                      Boolean isUsed, Double speed, Integer crewSize) {
+        this.name = name;
+        this.planet = planet;
+        this.shipType = shipType;
+        this.prodDate = prodDate;
+        this.isUsed = isUsed;
+        this.speed = speed;
+        this.crewSize = crewSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPlanet() {
+        return planet;
+    }
+
+    public ShipType getShipType() {
+        return shipType;
+    }
+
+    public Date getProdDate() {
+        return prodDate;
+    }
+
+    public Boolean getIsUsed() {
+        return isUsed;
+    }
+
+    public Double getSpeed() {
+        return speed;
+    }
+
+    public Integer getCrewSize() {
+        return crewSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ShipUpdate{" +
+                "name='" + name + '\'' +
+                ", planet='" + planet + '\'' +
+                ", shipType=" + shipType +
+                ", prodDate=" + prodDate +
+                ", isUsed=" + isUsed +
+                ", speed=" + speed +
+                ", crewSize=" + crewSize +
+                '}';
+    }
+}
@@ -0,0 +1,37 @@
+package com.space.service;
+
+import com.space.model.Ship;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Last version of every ship a listener applied since its last reload. afterCommit callbacks of
+ * concurrent transactions run in no particular order, so two writes of one ship can be reported
+ * in reverse; the older one is recognised by its lower Ship.version and dropped. Deletes are kept
+ * as well, so a late save does not bring a deleted ship back. One entry per ship written since
+ * the last reload. Not thread safe: used under the owner's lock.
+ */
+class ShipVersions {
+    private static final long DELETED = Long.MAX_VALUE;
+
+    private final Map<Long, Long> versions = new HashMap<>();
+
+    // whether the saved ship is newer than the last write applied, which it then becomes
+    boolean saved(Ship ship) {
+        Long version = ship.getVersion();
+        if (version == null) return true;
+        Long applied = versions.get(ship.getId());
+        if (applied != null && applied >= version) return false;
+        versions.put(ship.getId(), version);
+        return true;
+    }
+
+    void deleted(Long id) {
+        versions.put(id, DELETED);
+    }
+
+    void clear() {
+        versions.clear();
+    }
+}
@@ -0,0 +1,93 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import com.space.model.ShipType;
+
+import java.util.Date;
+
+/*
+ * Read-only copy of a ship as returned by list, page and export. Built directly by a JPQL
+ * constructor expression, so the rows never enter the persistence context. Serializes to
+ * the same JSON and CSV as Ship.
+ */
+public class ShipView {
+    private final long id;
+    private final String name;
+    private final String planet;
+    private final ShipType shipType;
+    private final Date prodDate;
+    // boxed like Ship: the columns are nullable, and legacy rows may hold NULL
+    private final Boolean isUsed;
+    private final Double speed;
+    private final Integer crewSize;
+    private final Double rating;
+
+    public ShipView(Long id, String name, String planet, ShipType shipType, Date prodDate,
+                    Boolean isUsed, Double speed, Integer crewSize, Double rating) {
+        this.id = id;
+        this.name = name;
+        this.planet = planet;
+        this.shipType = shipType;
+        this.prodDate = prodDate;
+        this.isUsed = isUsed;
+        this.speed = speed;
+        this.crewSize = crewSize;
+        this.rating = rating;
+    }
+
+    public static ShipView of(Ship ship) {
+        return new ShipView(ship.getId(), ship.getName(), ship.getPlanet(), ship.getShipType(), ship.getProdDate(),
+                ship.getIsUsed(), ship.getSpeed(), ship.getCrewSize(), ship.getRating());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPlanet() {
+        return planet;
+    }
+
+    public ShipType getShipType() {
+        return shipType;
+    }
+
+    public Date getProdDate() {
+        return prodDate;
+    }
+
+    public Boolean getIsUsed() {
+        return isUsed;
+    }
+
+    public Double getSpeed() {
+        return speed;
+    }
+
+    public Integer getCrewSize() {
+        return crewSize;
+    }
+
+    public Double getRating() {
+        return rating;
+    }
+
+    @Override
+    public String toString() {
+        return "ShipView{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", planet='" + planet + '\'' +
+                ", shipType=" + shipType +
+                ", prodDate=" + prodDate +
+                ", isUsed=" + isUsed +
+                ", speed=" + speed +
+                ", crewSize=" + crewSize +
+                ", rating=" + rating +
+                '}';
+    }
+}
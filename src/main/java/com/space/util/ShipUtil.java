@@ -1,22 +1,78 @@
 package com.space.util;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
 
 public class ShipUtil {
 
-    private static final int CURRENT_YEAR = 3019;
+    public static final int CURRENT_YEAR = 3019;
 
-    public static double calculateRating(double speed, Date prodDate, boolean isUsed) {
+    /*
+     * Start of every year from FIRST_TABLE_YEAR to LAST_TABLE_YEAR + 1 in the default time zone,
+     * as computed by Calendar once at class load. Lookups are a binary search over this table,
+     * so the hot paths do not allocate; instants outside it fall back to Calendar.
+     * The table follows the default time zone as it was at startup.
+     */
+    private static final int FIRST_TABLE_YEAR = 1900;
+    private static final int LAST_TABLE_YEAR = 3100;
+    private static final long[] YEAR_STARTS = yearStarts();
+
+    private static long[] yearStarts() {
+        long[] starts = new long[LAST_TABLE_YEAR - FIRST_TABLE_YEAR + 2];
         Calendar cal = Calendar.getInstance();
-        cal.setTimeInMillis(prodDate.getTime());
+        cal.clear();
+        for (int i = 0; i < starts.length; i++) {
+            cal.set(FIRST_TABLE_YEAR + i, Calendar.JANUARY, 1, 0, 0, 0);
+            starts[i] = cal.getTimeInMillis();
+        }
+        return starts;
+    }
+
+    // index into YEAR_STARTS of the year containing millis, or -1 outside the table
+    private static int yearIndex(long millis) {
+        if (millis < YEAR_STARTS[0] || millis >= YEAR_STARTS[YEAR_STARTS.length - 1]) return -1;
+        int i = Arrays.binarySearch(YEAR_STARTS, millis);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    // same value as Calendar.get(Calendar.YEAR) in the default time zone
+    public static int getYear(long millis) {
+        int i = yearIndex(millis);
+        if (i >= 0) return FIRST_TABLE_YEAR + i;
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        return cal.get(Calendar.YEAR);
+    }
+
+    public static double calculateRating(double speed, Date prodDate, boolean isUsed) {
+        return calculateRating(speed, getYear(prodDate.getTime()), isUsed);
+    }
+
+    public static double calculateRating(double speed, int year, boolean isUsed) {
         double k = isUsed ? 0.5 : 1;
-        return Math.round(80 * speed * k / (CURRENT_YEAR - cal.get(Calendar.YEAR) + 1) * 100) / 100.0;
+        return Math.round(80 * speed * k / (CURRENT_YEAR - year + 1) * 100) / 100.0;
     }
 
+    /*
+     * Rates ships[i] = (speeds[i], years[i], used[i]) into ratings[i]. A plain counted loop over
+     * primitive arrays with no calls besides Math.round, so the JIT can unroll it.
+     */
+    public static void calculateRatings(double[] speeds, int[] years, boolean[] used, double[] ratings) {
+        int n = speeds.length;
+        if (years.length != n || used.length != n || ratings.length != n) {
+            throw new IllegalArgumentException("Array lengths differ");
+        }
+        for (int i = 0; i < n; i++) {
+            double k = used[i] ? 0.5 : 1;
+            ratings[i] = Math.round(80 * speeds[i] * k / (CURRENT_YEAR - years[i] + 1) * 100) / 100.0;
+        }
+    }
 
-    public static Date getFirstDayOfYear(long date) {
+    public static long getFirstDayOfYearMillis(long date) {
+        int i = yearIndex(date);
+        if (i >= 0) return YEAR_STARTS[i];
         Calendar cal = Calendar.getInstance();
         cal.setTimeZone(TimeZone.getDefault());
         cal.setTimeInMillis(date);
@@ -27,13 +83,15 @@ public class ShipUtil {
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
         cal.set(Calendar.MILLISECOND, 0);
-        return cal.getTime();
+        return cal.getTimeInMillis();
+    }
+
+    public static Date getFirstDayOfYear(long date) {
+        return new Date(getFirstDayOfYearMillis(date));
     }
 
     public static int getYearOfMillis(long millis) {
-        Date d = new Date();
-        d.setTime(millis);
-        return d.getYear() + 1900;
+        return getYear(millis);
     }
 
 }
@@ -0,0 +1,16 @@
+-- shipType becomes a one byte ENUM instead of VARCHAR(9); values keep their names,
+-- so @Enumerated(EnumType.STRING) still maps it.
+ALTER TABLE ship
+    MODIFY shipType ENUM ('TRANSPORT', 'MILITARY', 'MERCHANT') NULL;
+
+-- InnoDB appends the primary key to every secondary index, so each index below is
+-- effectively (column, id): it serves the range filter on the column, the ORDER BY
+-- column, id of the matching ShipOrder and the keyset seek on (column, id).
+CREATE INDEX ship_speed_idx ON ship (speed);
+CREATE INDEX ship_prod_date_idx ON ship (prodDate);
+CREATE INDEX ship_rating_idx ON ship (rating);
+CREATE INDEX ship_crew_size_idx ON ship (crewSize);
+
+-- Equality filters shipType / isUsed through its left prefix, ordered by rating
+-- (order=RATING within one ship type is the most frequent list request).
+CREATE INDEX ship_type_used_rating_idx ON ship (shipType, isUsed, rating);
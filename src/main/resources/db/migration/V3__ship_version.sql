@@ -0,0 +1,4 @@
+-- Optimistic lock column for Ship.version (@Version); it is the ETag of /rest/ships/{id}.
+-- Rows written by other tools keep working: the default starts them at version 0.
+ALTER TABLE ship
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,27 @@
+package com.space.config;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class ReplicaCachesTest {
+
+    @Test(expected = IllegalStateException.class)
+    public void defaultCachesAreRefusedWithReplicas() {
+        AppConfig.checkNoReadThroughCaches(new MockEnvironment());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void anyReadThroughCacheIsRefused() {
+        AppConfig.checkNoReadThroughCaches(new MockEnvironment()
+                .withProperty("cosmoport.ship-cache.enabled", "false")
+                .withProperty("cosmoport.hibernate-cache.enabled", "false"));
+    }
+
+    @Test
+    public void replicasWithoutReadThroughCaches() {
+        AppConfig.checkNoReadThroughCaches(new MockEnvironment()
+                .withProperty("cosmoport.ship-cache.enabled", "false")
+                .withProperty("cosmoport.result-cache.enabled", "false")
+                .withProperty("cosmoport.hibernate-cache.enabled", "false"));
+    }
+}
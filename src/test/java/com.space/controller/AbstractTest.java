@@ -3,6 +3,8 @@ package com.space.controller;
 import com.space.config.AppConfig;
 import com.space.config.MyWebAppInit;
 import com.space.config.WebConfig;
+import com.space.service.ShipChangeListener;
+import org.hibernate.SessionFactory;
 import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +18,10 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.List;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @ActiveProfiles("dev")
 @ContextConfiguration(classes = {AppConfig.class, MyWebAppInit.class, WebConfig.class})
@@ -25,14 +31,29 @@ public abstract class AbstractTest {
 
     WebApplicationContext context;
     MockMvc mockMvc;
+    private List<ShipChangeListener> listeners = Collections.emptyList();
+    private EntityManagerFactory emf;
 
     @Autowired
     public void setContext(WebApplicationContext context) {
         this.context = context;
     }
 
+    @Autowired(required = false)
+    public void setListeners(List<ShipChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Autowired
+    public void setEmf(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    // test.sql is re-run before every test straight through JDBC, behind the back of everything kept in memory
     @Before
     public void setup() {
         mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        emf.unwrap(SessionFactory.class).getCache().evictAllRegions();
+        listeners.forEach(ShipChangeListener::reset);
     }
 }
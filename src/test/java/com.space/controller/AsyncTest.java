@@ -0,0 +1,125 @@
+package com.space.controller;
+
+import com.space.metrics.MetricsRegistry;
+import com.space.service.QueryExecutor;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.servlet.AsyncListener;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// a single query thread with room for one waiting query, so that the tests can fill it up
+@TestPropertySource(properties = {"cosmoport.async.threads=1", "cosmoport.async.queue-capacity=1"})
+public class AsyncTest extends AbstractTest {
+
+    @Autowired
+    private QueryExecutor queryExecutor;
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    private static MockHttpServletRequestBuilder async(String url) {
+        return get(url).header("Prefer", "respond-async").accept(MediaType.APPLICATION_JSON_UTF8);
+    }
+
+    private MvcResult start(String url) throws Exception {
+        return mockMvc.perform(async(url)).andExpect(request().asyncStarted()).andReturn();
+    }
+
+    private String fetch(String url) throws Exception {
+        return mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    // occupies the only query thread until release
+    private void blockQueryThread() throws InterruptedException {
+        queryExecutor.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue("Query thread did not start", started.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void asyncListAndCountMatchSync() throws Exception {
+        String url = "/rest/ships?planet=Mars&order=SPEED&pageSize=2";
+        MvcResult list = mockMvc.perform(asyncDispatch(start(url)))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals("Async list differs", fetch(url), list.getResponse().getContentAsString());
+        assertTrue("No next cursor", list.getResponse().getHeader(ShipController.NEXT_CURSOR_HEADER) != null);
+
+        String count = mockMvc.perform(asyncDispatch(start("/rest/ships/count?planet=Mars")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Async count differs", fetch("/rest/ships/count?planet=Mars"), count);
+    }
+
+    @Test
+    public void asyncGetShip() throws Exception {
+        String ship = mockMvc.perform(asyncDispatch(start("/rest/ships/1")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Async ship differs", fetch("/rest/ships/1"), ship);
+        mockMvc.perform(asyncDispatch(start("/rest/ships/1000"))).andExpect(status().isNotFound());
+        mockMvc.perform(asyncDispatch(start("/rest/ships/0"))).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void asyncRequestIsRecordedOnce() throws Exception {
+        long before = metricsRegistry.request("GET /rest/ships/count").getCount();
+        mockMvc.perform(asyncDispatch(start("/rest/ships/count"))).andExpect(status().isOk());
+        assertEquals("Async request not recorded once", before + 1,
+                metricsRegistry.request("GET /rest/ships/count").getCount());
+    }
+
+    @Test
+    public void fullQueueIsServiceUnavailable() throws Exception {
+        blockQueryThread();
+        queryExecutor.submit(() -> { });
+        long rejected = queryExecutor.getRejected();
+
+        mockMvc.perform(asyncDispatch(start("/rest/ships/count"))).andExpect(status().isServiceUnavailable());
+        assertEquals("Rejection not counted", rejected + 1, queryExecutor.getRejected());
+    }
+
+    @Test
+    public void timeoutIsServiceUnavailable() throws Exception {
+        blockQueryThread();
+        long timeouts = queryExecutor.getTimeouts();
+        MvcResult result = start("/rest/ships?pageSize=5");
+        assertEquals("Request not queued", 1, queryExecutor.getQueued());
+
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) listener.onTimeout(null);
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable());
+        assertEquals("Timeout not counted", timeouts + 1, queryExecutor.getTimeouts());
+        assertEquals("Timed out query still queued", 0, queryExecutor.getQueued());
+    }
+}
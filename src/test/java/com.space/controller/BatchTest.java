@@ -0,0 +1,94 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipType;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class BatchTest extends AbstractTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode batch(String url, String body) throws Exception {
+        String content = mockMvc.perform(post(url)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readTree(content);
+    }
+
+    private ShipInfoTest getShip(long id) throws Exception {
+        String content = mockMvc.perform(get("/rest/ships/" + id).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, ShipInfoTest.class);
+    }
+
+    @Test
+    public void createShipsTest() throws Exception {
+        JsonNode results = batch("/rest/ships/batch", "[" +
+                "{\"name\": \"123456789\", \"planet\": \"Earth\", \"shipType\": \"MILITARY\", " +
+                "\"prodDate\": 32998274577071, \"isUsed\": true, \"speed\": 0.8, \"crewSize\": 14}," +
+                "{\"name\": \"\", \"planet\": \"Earth\", \"shipType\": \"MILITARY\", " +
+                "\"prodDate\": 32998274577071, \"speed\": 0.8, \"crewSize\": 14}," +
+                "{\"name\": \"Second\", \"planet\": \"Mars\", \"shipType\": \"TRANSPORT\", " +
+                "\"prodDate\": 32998274577071, \"speed\": 0.5, \"crewSize\": 100}]");
+
+        assertEquals("Wrong number of results", 3, results.size());
+        assertEquals("First ship not created", 200, results.get(0).get("status").asInt());
+        assertEquals("Invalid ship not rejected", 400, results.get(1).get("status").asInt());
+        assertEquals("Third ship not created", 200, results.get(2).get("status").asInt());
+        assertEquals("Wrong index", 2, results.get(2).get("index").asInt());
+
+        ShipInfoTest expected = new ShipInfoTest(41L, "123456789", "Earth", ShipType.MILITARY, 32998274577071L, true, 0.8, 14, 6.4);
+        assertEquals("Wrong generated id", 41L, results.get(0).get("id").asLong());
+        assertEquals("Wrong generated id", 42L, results.get(2).get("id").asLong());
+        assertEquals("Created ship differs", expected, getShip(41));
+        assertEquals("isUsed not defaulted", false, getShip(42).isUsed);
+    }
+
+    @Test
+    public void updateShipsTest() throws Exception {
+        JsonNode results = batch("/rest/ships/batch/update", "[" +
+                "{\"id\": 1, \"name\": \"Renamed\"}," +
+                "{\"id\": 2, \"speed\": 5}," +
+                "{\"id\": 999, \"name\": \"Missing\"}," +
+                "{\"name\": \"No id\"}," +
+                "{\"id\": 3}]");
+
+        assertEquals("Ship 1 not updated", 200, results.get(0).get("status").asInt());
+        assertEquals("Invalid speed not rejected", 400, results.get(1).get("status").asInt());
+        assertEquals("Missing ship not reported", 404, results.get(2).get("status").asInt());
+        assertEquals("Missing id not rejected", 400, results.get(3).get("status").asInt());
+        assertEquals("Empty update not accepted", 200, results.get(4).get("status").asInt());
+
+        ShipInfoTest expected = new TestsHelper().getShipInfosById(1);
+        expected.name = "Renamed";
+        assertEquals("Update not persisted", expected, getShip(1));
+        assertEquals("Result does not carry the updated ship", "Renamed",
+                results.get(0).get("ship").get("name").asText());
+        assertEquals("Rejected update was persisted", new TestsHelper().getShipInfosById(2), getShip(2));
+    }
+
+    @Test
+    public void deleteShipsTest() throws Exception {
+        JsonNode results = batch("/rest/ships/batch/delete", "[1, 0, 999, 2]");
+
+        assertEquals("Ship 1 not deleted", 200, results.get(0).get("status").asInt());
+        assertEquals("Invalid id not rejected", 400, results.get(1).get("status").asInt());
+        assertEquals("Missing ship not reported", 404, results.get(2).get("status").asInt());
+        assertEquals("Ship 2 not deleted", 200, results.get(3).get("status").asInt());
+        mockMvc.perform(get("/rest/ships/1")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/rest/ships/2")).andExpect(status().isNotFound());
+        getShip(3);
+    }
+}
@@ -0,0 +1,173 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.model.ShipOrder;
+import com.space.model.ShipType;
+import com.space.service.ShipColumnIndex;
+import com.space.service.ShipFilter;
+import com.space.service.ShipService;
+import com.space.service.ShipSort;
+import com.space.service.ShipView;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@TestPropertySource(properties = "cosmoport.index.enabled=true")
+public class ColumnIndexTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+
+    @Autowired
+    private ShipColumnIndex shipColumnIndex;
+    @Autowired
+    private ShipService shipService;
+    @Autowired
+    private DataSource dataSource;
+
+    private List<ShipInfoTest> getShips(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, typeReference);
+    }
+
+    private static ShipFilter filter(String shipType, Long after) {
+        return new ShipFilter(null, null, shipType, after, null, null, null, null, null, null, null, null);
+    }
+
+    private static List<Long> ids(List<ShipView> ships) {
+        return ships.stream().map(ShipView::getId).collect(Collectors.toList());
+    }
+
+    private long getCount(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Long.parseLong(content);
+    }
+
+    @Test
+    public void listWithFiltersMatchesDatabase() throws Exception {
+        assertTrue(shipColumnIndex.isEnabled());
+        List<ShipInfoTest> actual = getShips("/rest/ships?shipType=TRANSPORT&minSpeed=0.3&maxSpeed=0.6&pageSize=10");
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPage(0, 10,
+                testsHelper.getShipInfosByShipType(ShipType.TRANSPORT,
+                        testsHelper.getShipInfosByMinSpeed(0.3,
+                                testsHelper.getShipInfosByMaxSpeed(0.6,
+                                        testsHelper.getAllShips()))));
+        assertEquals("Index returns a different list than the database", expected, actual);
+    }
+
+    @Test
+    public void listOrderedByRatingWithPage() throws Exception {
+        List<ShipInfoTest> actual = getShips("/rest/ships?name=a&order=RATING&pageNumber=1&pageSize=4");
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPage(1, 4,
+                testsHelper.getShipInfosByOrder(ShipOrder.RATING,
+                        testsHelper.getShipInfosByName("a",
+                                testsHelper.getAllShips())));
+        assertEquals("Index returns a different page than the database", expected, actual);
+    }
+
+    // LIKE on the utf8_general_ci columns ignores case and accents, so the index does too
+    @Test
+    public void listMatchesNameIgnoringCase() throws Exception {
+        List<ShipInfoTest> actual = getShips("/rest/ships?name=ORIÓN&pageSize=20");
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPage(0, 20,
+                testsHelper.getShipInfosByName("Orion", testsHelper.getAllShips()));
+        assertTrue(!expected.isEmpty());
+        assertEquals("Index does not fold case like the database collation", expected, actual);
+    }
+
+    @Test
+    public void listOrderedByDescendingKeys() throws Exception {
+        List<ShipInfoTest> actual = getShips("/rest/ships?order=-DATE,-SPEED&pageNumber=1&pageSize=5");
+        List<ShipInfoTest> expected = testsHelper.getAllShips();
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> -s.prodDate).thenComparing(s -> -s.speed)
+                .thenComparing(s -> s.id));
+        assertEquals("Index returns a different page than the database",
+                testsHelper.getShipInfosByPage(1, 5, expected), actual);
+    }
+
+    @Test
+    public void countFollowsCreateAndDelete() throws Exception {
+        long before = getCount("/rest/ships/count?isUsed=false&shipType=MILITARY");
+        long expected = testsHelper.getShipInfosByIsUsed(false,
+                testsHelper.getShipInfosByShipType(ShipType.MILITARY, testsHelper.getAllShips())).size();
+        assertEquals("Index count differs from the database", expected, before);
+
+        mockMvc.perform(post("/rest/ships/")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.IS_USED_FALSE_JSON))
+                .andExpect(status().isOk());
+        assertEquals("Created ship is not visible in the index",
+                before + 1, getCount("/rest/ships/count?isUsed=false&shipType=MILITARY"));
+
+        mockMvc.perform(delete("/rest/ships/41")).andExpect(status().isOk());
+        assertEquals("Deleted ship is still visible in the index",
+                before, getCount("/rest/ships/count?isUsed=false&shipType=MILITARY"));
+    }
+
+    @Test
+    public void nullColumnsBehaveLikeDatabase() throws Exception {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO ship (name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                "VALUES ('No date', 'Mars', 'MILITARY', NULL, false, 0.5, 10, 1.0)");
+        jdbc.update("INSERT INTO ship (name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                "VALUES ('No type', 'Mars', NULL, '3000-01-01', false, 0.5, 10, 1.0)");
+        shipColumnIndex.reload();
+
+        for (String order : new String[]{"DATE", "-DATE"}) {
+            ShipSort sort = ShipSort.parse(order);
+            assertEquals("Index orders NULL differently with " + order,
+                    ids(shipService.list(filter(null, null), sort, null, 0, 50)),
+                    ids(shipColumnIndex.list(filter(null, null), sort, null, 0, 50)));
+        }
+        assertEquals("NULL prodDate passed a date filter",
+                shipService.count(filter(null, 0L)), shipColumnIndex.count(filter(null, 0L)));
+        assertEquals("NULL shipType matched a shipType filter",
+                shipService.count(filter("MILITARY", null)), shipColumnIndex.count(filter("MILITARY", null)));
+    }
+
+    // % and _ are LIKE wildcards to the database, so such filters do not go to the index
+    @Test
+    public void wildcardFiltersGoToDatabase() throws Exception {
+        ShipFilter wildcard = new ShipFilter("%", null, null, null, null, null, null, null, null, null, null, null);
+        assertTrue("Index answers a LIKE pattern", !shipColumnIndex.canAnswer(wildcard));
+        assertEquals("Wildcard taken literally", (long) testsHelper.getAllShips().size(),
+                getCount("/rest/ships/count?name=%"));
+        assertEquals("Wildcard taken literally", (long) testsHelper.getAllShips().size(),
+                getCount("/rest/ships/count?planet=_"));
+    }
+
+    @Test
+    public void olderWriteReportedLastIsDropped() throws Exception {
+        Ship stale = new Ship(shipService.findById(1L));
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Nowhere\"}"))
+                .andExpect(status().isOk());
+        // the first write's afterCommit callback runs after the second's
+        shipColumnIndex.shipSaved(stale);
+        assertEquals("Older write applied", 1L, getCount("/rest/ships/count?planet=Nowhere"));
+    }
+}
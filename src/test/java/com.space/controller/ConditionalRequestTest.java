@@ -0,0 +1,100 @@
+package com.space.controller;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ConditionalRequestTest extends AbstractTest {
+
+    private String eTag(long id) throws Exception {
+        return mockMvc.perform(get("/rest/ships/" + id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @Test
+    public void getWithMatchingIfNoneMatchIsNotModifiedTest() throws Exception {
+        String eTag = eTag(7);
+        assertEquals("Unexpected initial ETag", "\"0\"", eTag);
+
+        String body = mockMvc.perform(get("/rest/ships/7").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("304 must not carry a body", "", body);
+
+        mockMvc.perform(get("/rest/ships/7").header(HttpHeaders.IF_NONE_MATCH, "\"41\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void updateChangesETagTest() throws Exception {
+        String before = eTag(7);
+        String after = mockMvc.perform(post("/rest/ships/7")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, before)
+                .content("{\"name\": \"Renamed\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertTrue("Update did not change the ETag", !before.equals(after));
+        assertEquals("GET and POST disagree on the ETag", after, eTag(7));
+        mockMvc.perform(get("/rest/ships/7").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void updateWithStaleIfMatchFailsTest() throws Exception {
+        String stale = eTag(7);
+        mockMvc.perform(post("/rest/ships/7")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"First\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/rest/ships/7")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, stale)
+                .content("{\"name\": \"Second\"}"))
+                .andExpect(status().isPreconditionFailed());
+
+        String name = mockMvc.perform(get("/rest/ships/7"))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue("Conflicting update was applied", name.contains("\"First\""));
+    }
+
+    @Test
+    public void updateMissingShipWithIfMatchIsNotFoundTest() throws Exception {
+        mockMvc.perform(post("/rest/ships/415")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .content("{\"name\": \"Missing\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void emptyUpdateWithStaleIfMatchFailsTest() throws Exception {
+        String stale = eTag(7);
+        mockMvc.perform(post("/rest/ships/7")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"First\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/rest/ships/7")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, stale)
+                .content("{}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(post("/rest/ships/7")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, eTag(7))
+                .content("{}"))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,121 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipOrder;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class CursorPaginationTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+
+    @Autowired
+    private DataSource dataSource;
+
+    private List<ShipInfoTest> walk(String url) throws Exception {
+        List<ShipInfoTest> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletResponse response = mockMvc.perform(get(cursor == null ? url : url + "&cursor=" + cursor)
+                    .accept(MediaType.APPLICATION_JSON_UTF8))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+            all.addAll(mapper.readValue(response.getContentAsString(), typeReference));
+            cursor = response.getHeader(ShipController.NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+        return all;
+    }
+
+    @Test
+    public void cursorWalkByRatingReturnsEveryShipOnce() throws Exception {
+        List<ShipInfoTest> actual = walk("/rest/ships?order=RATING&pageSize=7");
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByOrder(ShipOrder.RATING, testsHelper.getAllShips());
+        assertEquals("Cursor pages differ from the full ordered list", expected, actual);
+    }
+
+    @Test
+    public void cursorWalkByDateWithFilter() throws Exception {
+        List<ShipInfoTest> actual = walk("/rest/ships?name=a&order=DATE&pageSize=4");
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByName("a", testsHelper.getAllShips());
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> s.prodDate).thenComparing(s -> s.id));
+        assertEquals("Cursor pages differ from the full ordered list", expected, actual);
+    }
+
+    @Test
+    public void cursorWalkByDescendingKeys() throws Exception {
+        List<ShipInfoTest> actual = walk("/rest/ships?order=-RATING,SPEED&pageSize=6");
+        List<ShipInfoTest> expected = testsHelper.getAllShips();
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> -s.rating).thenComparing(s -> s.speed)
+                .thenComparing(s -> s.id));
+        assertEquals("Cursor pages differ from the full ordered list", expected, actual);
+
+        actual = walk("/rest/ships?order=-ID&pageSize=9");
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> -s.id));
+        assertEquals("Cursor pages differ from the id descending list", expected, actual);
+    }
+
+    // legacy rows with NULL sort keys are neither lost nor repeated, and their cursors can be used
+    @Test
+    public void cursorWalkOverNullKeys() throws Exception {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        for (int i = 0; i < 3; i++) {
+            jdbc.update("INSERT INTO ship (name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                    "VALUES ('No date', 'Mars', 'MILITARY', NULL, false, 0.5, 10, 1.0)");
+            jdbc.update("INSERT INTO ship (name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                    "VALUES ('No speed', 'Mars', 'MILITARY', '3000-01-01', false, NULL, 10, NULL)");
+        }
+        for (String order : new String[]{"DATE", "-DATE", "SPEED,-DATE", "-SPEED,DATE", "-RATING,SPEED"}) {
+            List<ShipInfoTest> page = mapper.readValue(mockMvc.perform(get("/rest/ships?order=" + order + "&pageSize=100"))
+                    .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(), typeReference);
+            assertEquals("Cursor pages differ from the full list ordered by " + order, ids(page),
+                    ids(walk("/rest/ships?order=" + order + "&pageSize=4")));
+        }
+    }
+
+    private static List<Long> ids(List<ShipInfoTest> ships) {
+        return ships.stream().map(s -> s.id).collect(Collectors.toList());
+    }
+
+    @Test
+    public void lastPageHasNoNextCursor() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/rest/ships?pageSize=39"))
+                .andExpect(status().isOk()).andReturn().getResponse();
+        String cursor = response.getHeader(ShipController.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        response = mockMvc.perform(get("/rest/ships?pageSize=39&cursor=" + cursor))
+                .andExpect(status().isOk()).andReturn().getResponse();
+        assertEquals("Wrong size of the last page", 1,
+                mapper.readValue(response.getContentAsString(), typeReference).size());
+        assertNull(response.getHeader(ShipController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void invalidCursorIsRejected() throws Exception {
+        mockMvc.perform(get("/rest/ships?cursor=%%%")).andExpect(status().isBadRequest());
+        String speedCursor = mockMvc.perform(get("/rest/ships?order=SPEED"))
+                .andReturn().getResponse().getHeader(ShipController.NEXT_CURSOR_HEADER);
+        mockMvc.perform(get("/rest/ships?order=RATING&cursor=" + speedCursor)).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,88 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipOrder;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ExportTest extends AbstractTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    private DataSource dataSource;
+
+    private MockHttpServletResponse export(String query) throws Exception {
+        return mockMvc.perform(get("/rest/ships/export?" + query))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+    }
+
+    @Test
+    public void exportAllAsNdjsonTest() throws Exception {
+        MockHttpServletResponse response = export("");
+        assertEquals("Wrong content type", true,
+                response.getContentType().startsWith(ShipController.NDJSON_CONTENT_TYPE));
+
+        List<ShipInfoTest> actual = new ArrayList<>();
+        for (String line : response.getContentAsString().split("\n")) {
+            actual.add(mapper.readValue(line, ShipInfoTest.class));
+        }
+        TestsHelper helper = new TestsHelper();
+        assertEquals("Export differs from the full fleet", helper.getShipInfosByOrder(ShipOrder.ID, helper.getAllShips()), actual);
+        assertEquals("NDJSON must end with a newline", true, response.getContentAsString().endsWith("}\n"));
+    }
+
+    @Test
+    public void exportFilteredAsCsvTest() throws Exception {
+        MockHttpServletResponse response = export("format=csv&isUsed=true&order=SPEED");
+        assertEquals("Wrong content type", true,
+                response.getContentType().startsWith(ShipController.CSV_CONTENT_TYPE));
+
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals("Wrong header", "id,name,planet,shipType,prodDate,isUsed,speed,crewSize,rating", lines[0]);
+
+        String content = mockMvc.perform(get("/rest/ships/count?isUsed=true"))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Wrong number of rows", Integer.parseInt(content), lines.length - 1);
+        double previous = 0;
+        for (int i = 1; i < lines.length; i++) {
+            String[] columns = lines[i].split(",");
+            assertEquals("Filter not applied", "true", columns[5]);
+            double speed = Double.parseDouble(columns[6]);
+            assertEquals("Rows not ordered by speed", true, speed >= previous);
+            previous = speed;
+        }
+    }
+
+    @Test
+    public void exportUnknownFormatTest() throws Exception {
+        mockMvc.perform(get("/rest/ships/export?format=xml")).andExpect(status().isBadRequest());
+    }
+
+    // V1 allows NULL in every column but id; such rows are listed and exported with nulls
+    @Test
+    public void rowsWithNullColumnsTest() throws Exception {
+        new JdbcTemplate(dataSource).update("INSERT INTO ship(name, planet) VALUES ('Legacy', 'Pluto')");
+
+        String list = mockMvc.perform(get("/rest/ships?name=Legacy"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Wrong list", "null", mapper.readTree(list).get(0).get("rating").toString());
+
+        String[] lines = export("format=csv&name=Legacy").getContentAsString().split("\n");
+        assertEquals("Wrong number of rows", 2, lines.length);
+        assertEquals("Wrong row", true, lines[1].endsWith(",Legacy,Pluto,,,,,,"));
+    }
+}
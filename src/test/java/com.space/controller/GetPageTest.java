@@ -0,0 +1,61 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipType;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class GetPageTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode getPage(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readTree(content);
+    }
+
+    private List<ShipInfoTest> ships(JsonNode page) throws Exception {
+        return Arrays.asList(mapper.treeToValue(page.get("ships"), ShipInfoTest[].class));
+    }
+
+    @Test
+    public void pageAndCountMatchSeparateCalls() throws Exception {
+        JsonNode page = getPage("/rest/ships/page?shipType=MERCHANT&minCrewSize=10&pageNumber=1&pageSize=4");
+        List<ShipInfoTest> filtered = testsHelper.getShipInfosByShipType(ShipType.MERCHANT,
+                testsHelper.getShipInfosByMinCrewSize(10, testsHelper.getAllShips()));
+
+        assertEquals("Wrong page", testsHelper.getShipInfosByPage(1, 4, filtered), ships(page));
+        assertEquals("Wrong count", (long) filtered.size(), page.get("count").asLong());
+    }
+
+    @Test
+    public void shortPageDerivesCount() throws Exception {
+        JsonNode page = getPage("/rest/ships/page?planet=Mars&pageSize=10");
+        List<ShipInfoTest> filtered = testsHelper.getShipInfosByPlanet("Mars", testsHelper.getAllShips());
+
+        assertEquals("Wrong page", filtered, ships(page));
+        assertEquals("Wrong count", (long) filtered.size(), page.get("count").asLong());
+    }
+
+    @Test
+    public void pageBeyondTheEndStillCounts() throws Exception {
+        JsonNode page = getPage("/rest/ships/page?isUsed=true&pageNumber=20");
+        assertEquals("Page should be empty", 0, page.get("ships").size());
+        assertEquals("Wrong count",
+                (long) testsHelper.getShipInfosByIsUsed(true, testsHelper.getAllShips()).size(),
+                page.get("count").asLong());
+    }
+}
@@ -0,0 +1,89 @@
+package com.space.controller;
+
+import com.space.metrics.HibernateCacheStatistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// without the result cache in front, so list and count queries reach Hibernate
+@TestPropertySource(properties = {"cosmoport.hibernate-cache.enabled=true", "cosmoport.result-cache.enabled=false"})
+public class HibernateCacheTest extends AbstractTest {
+
+    @Autowired
+    private HibernateCacheStatistics statistics;
+
+    @Before
+    public void setup() {
+        super.setup();
+        statistics.clear();
+    }
+
+    private String fetch(String url) throws Exception {
+        return mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Test
+    public void repeatedListIsQueryCacheHit() throws Exception {
+        assertTrue(statistics.isStatisticsEnabled());
+        String first = fetch("/rest/ships?planet=Mars&order=SPEED");
+        assertEquals("First list was a query cache hit", 0L, statistics.getQueryHits());
+
+        assertEquals("Cached list differs", first, fetch("/rest/ships?planet=Mars&order=SPEED"));
+        assertEquals("Second list was not a query cache hit", 1L, statistics.getQueryHits());
+        fetch("/rest/ships/count?planet=Mars");
+        fetch("/rest/ships/count?planet=Mars");
+        assertEquals("Second count was not a query cache hit", 2L, statistics.getQueryHits());
+    }
+
+    @Test
+    public void repeatedGetIsSecondLevelCacheHit() throws Exception {
+        String first = fetch("/rest/ships/1");
+        assertEquals("Cached ship differs", first, fetch("/rest/ships/1"));
+        assertTrue("Second get was not a second-level cache hit", statistics.getShipHits() >= 1);
+    }
+
+    @Test
+    public void updateMakesCachedListStale() throws Exception {
+        fetch("/rest/ships?name=Cached");
+        assertEquals("Unexpected match", "[]", fetch("/rest/ships?name=Cached"));
+
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Cached\"}"))
+                .andExpect(status().isOk());
+        assertTrue("Stale list served", fetch("/rest/ships?name=Cached").contains("\"id\":1"));
+        assertTrue("Stale ship served", fetch("/rest/ships/1").contains("\"name\":\"Cached\""));
+    }
+
+    // batch create and delete go around Hibernate with plain JDBC batches
+    @Test
+    public void batchWritesEvictCaches() throws Exception {
+        fetch("/rest/ships/1");
+        long count = Long.parseLong(fetch("/rest/ships/count"));
+
+        mockMvc.perform(post("/rest/ships/batch/delete")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[1]"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/1")).andExpect(status().isNotFound());
+        assertEquals("Stale count after batch delete", count - 1, Long.parseLong(fetch("/rest/ships/count")));
+
+        mockMvc.perform(post("/rest/ships/batch")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[{\"name\": \"New\", \"planet\": \"Earth\", \"shipType\": \"MILITARY\", " +
+                        "\"prodDate\": 32998274577071, \"speed\": 0.8, \"crewSize\": 14}]"))
+                .andExpect(status().isOk());
+        assertEquals("Stale count after batch create", count, Long.parseLong(fetch("/rest/ships/count")));
+    }
+}
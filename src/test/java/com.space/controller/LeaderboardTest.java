@@ -0,0 +1,118 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.ShipLeaderboard;
+import com.space.service.ShipService;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// a leaderboard of 3 per partition, so that writes push ships in and out of it
+@TestPropertySource(properties = "cosmoport.leaderboard.size=3")
+public class LeaderboardTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+    private static final Comparator<ShipInfoTest> BEST = Comparator.comparing((ShipInfoTest s) -> -s.rating)
+            .thenComparing(s -> s.id);
+
+    @Autowired
+    private ShipLeaderboard shipLeaderboard;
+    @Autowired
+    private ShipService shipService;
+
+    private List<ShipInfoTest> getShips(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, typeReference);
+    }
+
+    private List<ShipInfoTest> best(List<ShipInfoTest> ships, int limit) {
+        return ships.stream().sorted(BEST).limit(limit).collect(Collectors.toList());
+    }
+
+    @Test
+    public void topIsServedFromMemory() throws Exception {
+        long served = shipLeaderboard.getServed();
+        List<ShipInfoTest> military = testsHelper.getShipInfosByIsUsed(false,
+                testsHelper.getShipInfosByShipType(ShipType.MILITARY, testsHelper.getAllShips()));
+
+        assertEquals("Wrong top of a partition", best(military, 3),
+                getShips("/rest/ships/top?shipType=MILITARY&isUsed=false&limit=3"));
+        assertEquals("Wrong top over all partitions", best(testsHelper.getAllShips(), 2),
+                getShips("/rest/ships/top?limit=2"));
+        assertEquals("Wrong best rated page", best(military, 2),
+                getShips("/rest/ships?shipType=MILITARY&isUsed=false&order=-RATING&pageSize=2"));
+        assertEquals("Requests not served by the leaderboard", served + 3, shipLeaderboard.getServed());
+    }
+
+    @Test
+    public void largerLimitFallsBackToDatabase() throws Exception {
+        long served = shipLeaderboard.getServed();
+        assertEquals("Wrong top", best(testsHelper.getAllShips(), 5), getShips("/rest/ships/top?limit=5"));
+        assertEquals("Leaderboard answered beyond its size", served, shipLeaderboard.getServed());
+        mockMvc.perform(get("/rest/ships/top?limit=0")).andExpect(status().isBadRequest());
+        assertTrue(getShips("/rest/ships/top?shipType=UNKNOWN").isEmpty());
+    }
+
+    @Test
+    public void writesMoveShipsInAndOut() throws Exception {
+        List<ShipInfoTest> before = getShips("/rest/ships/top?shipType=MILITARY&isUsed=false&limit=3");
+
+        // the best ship leaves the partition: the fourth best has to be read back
+        long best = before.get(0).id;
+        mockMvc.perform(post("/rest/ships/" + best)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"isUsed\": true, \"speed\": " + before.get(0).speed + "}"))
+                .andExpect(status().isOk());
+        // a new ship rated above everything else enters it
+        mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Fastest\", \"planet\": \"Mars\", \"shipType\": \"MILITARY\", " +
+                        "\"prodDate\": 33103209600000, \"isUsed\": false, \"speed\": 0.99, \"crewSize\": 10}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/" + before.get(1).id)).andExpect(status().isOk());
+
+        // minRating keeps the list off the leaderboard
+        List<ShipInfoTest> expected = getShips("/rest/ships?shipType=MILITARY&isUsed=false&minRating=0&order=-RATING&pageSize=3");
+        assertEquals("Leaderboard differs from the database", expected,
+                getShips("/rest/ships/top?shipType=MILITARY&isUsed=false&limit=3"));
+        assertEquals("New ship is not on top", "Fastest", expected.get(0).name);
+        assertTrue("Ship that left is still listed", expected.stream().noneMatch(s -> s.id == best));
+    }
+
+    @Test
+    public void olderWriteReportedLastIsDropped() throws Exception {
+        long best = getShips("/rest/ships/top?shipType=MILITARY&isUsed=false&limit=3").get(0).id;
+        Ship stale = new Ship(shipService.findById(best));
+        mockMvc.perform(post("/rest/ships/" + best)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.01}"))
+                .andExpect(status().isOk());
+        // the first write's afterCommit callback runs after the second's
+        shipLeaderboard.shipSaved(stale);
+
+        List<ShipInfoTest> expected = getShips("/rest/ships?shipType=MILITARY&isUsed=false&minRating=0&order=-RATING&pageSize=3");
+        assertEquals("Leaderboard differs from the database", expected,
+                getShips("/rest/ships/top?shipType=MILITARY&isUsed=false&limit=3"));
+        assertTrue("Older write applied", expected.stream().noneMatch(s -> s.id == best));
+    }
+}
@@ -0,0 +1,49 @@
+package com.space.controller;
+
+import com.space.metrics.MetricsRegistry;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class MetricsTest extends AbstractTest {
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    @Test
+    public void requestsAreRecordedPerMapping() throws Exception {
+        // the registry lives as long as the test context, so only differences are checked
+        long requests = metricsRegistry.request("GET /rest/ships/{id}").getCount();
+        long rejected = metricsRegistry.request("GET /rest/ships/{id}").getClientErrors();
+        long calls = metricsRegistry.call("ShipService.findById").getCount();
+
+        mockMvc.perform(get("/rest/ships/1")).andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/2")).andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/0")).andExpect(status().isBadRequest());
+
+        assertEquals("Requests not counted", requests + 3, metricsRegistry.request("GET /rest/ships/{id}").getCount());
+        assertEquals("Rejected request not counted", rejected + 1,
+                metricsRegistry.request("GET /rest/ships/{id}").getClientErrors());
+        assertEquals("Service calls not timed", calls + 2, metricsRegistry.call("ShipService.findById").getCount());
+        assertTrue(metricsRegistry.call("ShipRepository.findById").getCount() > 0);
+    }
+
+    @Test
+    public void metricsEndpointWritesText() throws Exception {
+        mockMvc.perform(get("/rest/ships/count")).andExpect(status().isOk());
+        String text = mockMvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(text, text.contains("# TYPE http_server_requests_seconds summary"));
+        assertTrue(text, text.contains("http_server_requests_seconds{handler=\"GET /rest/ships/count\",quantile=\"0.99\"}"));
+        assertTrue(text, text.contains("http_server_requests_seconds_max{handler=\"GET /rest/ships/count\"}"));
+        assertTrue(text, text.contains("method_calls_seconds_count{method=\"ShipService.count\"}"));
+        assertTrue(text, text.contains("log_events_discarded_total "));
+        assertTrue(text, text.contains("query_coalescer_collapsed_total "));
+    }
+}
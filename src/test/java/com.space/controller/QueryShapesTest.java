@@ -0,0 +1,40 @@
+package com.space.controller;
+
+import com.space.service.ShipQueryShapes;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class QueryShapesTest extends AbstractTest {
+
+    @Autowired
+    private ShipQueryShapes queryShapes;
+
+    @Test
+    public void sameShapeIsCompiledOnceTest() throws Exception {
+        mockMvc.perform(get("/rest/ships?name=a&minSpeed=0.1&order=RATING")).andExpect(status().isOk());
+        long compiles = queryShapes.getCompiles();
+        long lookups = queryShapes.getLookups();
+
+        mockMvc.perform(get("/rest/ships?name=e&minSpeed=0.5&order=RATING")).andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships?name=x&minSpeed=0.9&order=RATING&pageNumber=2")).andExpect(status().isOk());
+        assertEquals("Same shape with other values was compiled again", compiles, queryShapes.getCompiles());
+        assertEquals("Lookups not counted", lookups + 2, queryShapes.getLookups());
+
+        mockMvc.perform(get("/rest/ships?name=e&maxSpeed=0.5&order=RATING")).andExpect(status().isOk());
+        assertEquals("New shape was not compiled", compiles + 1, queryShapes.getCompiles());
+    }
+
+    @Test
+    public void unknownShipTypeSkipsDatabaseTest() throws Exception {
+        long lookups = queryShapes.getLookups();
+        String count = mockMvc.perform(get("/rest/ships/count?shipType=SHUTTLE"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Unknown shipType must match nothing", "0", count);
+        assertEquals("A query was built for an impossible filter", lookups, queryShapes.getLookups());
+    }
+}
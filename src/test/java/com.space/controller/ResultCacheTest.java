@@ -0,0 +1,71 @@
+package com.space.controller;
+
+import com.space.controller.utils.TestsHelper;
+import com.space.metrics.HibernateCacheStatistics;
+import com.space.service.QueryResultCache;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ResultCacheTest extends AbstractTest {
+
+    @Autowired
+    private QueryResultCache resultCache;
+    @Autowired
+    private HibernateCacheStatistics statistics;
+
+    private long getCount(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Long.parseLong(content);
+    }
+
+    @Test
+    public void repeatedCountIsCacheHit() throws Exception {
+        assertTrue(resultCache.isEnabled());
+        long hits = resultCache.getHits();
+        long expected = new TestsHelper().getAllShips().size();
+
+        assertEquals("Wrong count", expected, getCount("/rest/ships/count"));
+        assertEquals("Wrong cached count", expected, getCount("/rest/ships/count"));
+        assertEquals("Second count was not a cache hit", hits + 1, resultCache.getHits());
+    }
+
+    @Test
+    public void listAndPageShareEntries() throws Exception {
+        mockMvc.perform(get("/rest/ships?planet=Mars&pageSize=5")).andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/count?planet=Mars")).andExpect(status().isOk());
+        long hits = resultCache.getHits();
+
+        mockMvc.perform(get("/rest/ships/page?planet=Mars&pageSize=5")).andExpect(status().isOk());
+        assertEquals("Page was not served from list and count entries", hits + 2, resultCache.getHits());
+    }
+
+    @Test
+    public void writeInvalidatesCachedCount() throws Exception {
+        long before = getCount("/rest/ships/count?shipType=MILITARY");
+        mockMvc.perform(post("/rest/ships/")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.NORMAL_JSON))
+                .andExpect(status().isOk());
+        assertEquals("Count was not invalidated by create", before + 1, getCount("/rest/ships/count?shipType=MILITARY"));
+
+        mockMvc.perform(delete("/rest/ships/41")).andExpect(status().isOk());
+        assertEquals("Count was not invalidated by delete", before, getCount("/rest/ships/count?shipType=MILITARY"));
+    }
+
+    // the result cache holds list/count results, so by default Hibernate does not cache them a second time
+    @Test
+    public void queryCacheIsOffBehindResultCache() throws Exception {
+        statistics.clear();
+        mockMvc.perform(get("/rest/ships?planet=Venus")).andExpect(status().isOk());
+        getCount("/rest/ships/count?planet=Venus");
+        assertEquals("Query cache stored results", 0L, statistics.getQueryPuts() + statistics.getQueryMisses());
+    }
+}
@@ -0,0 +1,86 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.service.ShipCache;
+import com.space.service.ShipService;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@TestPropertySource(properties = "cosmoport.ship-cache.max-size=2")
+public class ShipCacheTest extends AbstractTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private ShipCache shipCache;
+    @Autowired
+    private ShipService shipService;
+
+    private ShipInfoTest getShip(long id) throws Exception {
+        String content = mockMvc.perform(get("/rest/ships/" + id).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, ShipInfoTest.class);
+    }
+
+    @Test
+    public void repeatedGetIsServedFromCache() throws Exception {
+        assertTrue(shipCache.isEnabled());
+        long hits = shipCache.getHits();
+        ShipInfoTest expected = new TestsHelper().getShipInfosById(14);
+
+        assertEquals("Wrong ship on first read", expected, getShip(14));
+        assertEquals("Wrong ship on cached read", expected, getShip(14));
+        assertEquals("Second read was not a cache hit", hits + 1, shipCache.getHits());
+    }
+
+    @Test
+    public void updateAndDeleteAreVisibleThroughCache() throws Exception {
+        getShip(5);
+        mockMvc.perform(post("/rest/ships/5")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Renamed\"}"))
+                .andExpect(status().isOk());
+        assertEquals("Cache returned the ship as it was before the update", "Renamed", getShip(5).name);
+
+        mockMvc.perform(delete("/rest/ships/5")).andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/5")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void leastRecentlyUsedShipIsEvicted() throws Exception {
+        long evictions = shipCache.getEvictions();
+        getShip(1);
+        getShip(2);
+        getShip(3);
+        assertEquals("Cache grew beyond max-size", 2, shipCache.getSize());
+        assertEquals("Eviction was not counted", evictions + 1, shipCache.getEvictions());
+    }
+
+    @Test
+    public void olderWritesReportedLastAreDropped() throws Exception {
+        Ship updated = new Ship(shipService.findById(6L));
+        Ship deleted = new Ship(shipService.findById(7L));
+        mockMvc.perform(post("/rest/ships/6")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Renamed\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/7")).andExpect(status().isOk());
+        // afterCommit callbacks of earlier writes running after those of later ones
+        shipCache.shipSaved(updated);
+        shipCache.shipSaved(deleted);
+
+        assertEquals("Cache returned the ship as it was before the update", "Renamed", getShip(6).name);
+        mockMvc.perform(get("/rest/ships/7")).andExpect(status().isNotFound());
+    }
+}
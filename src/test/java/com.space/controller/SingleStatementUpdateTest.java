@@ -0,0 +1,45 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.util.ShipUtil;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.Date;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class SingleStatementUpdateTest extends AbstractTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private ShipInfoTest update(long id, String body) throws Exception {
+        String content = mockMvc.perform(post("/rest/ships/" + id)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, ShipInfoTest.class);
+    }
+
+    // rating is computed by the database from stored columns; it must match ShipUtil exactly
+    @Test
+    public void ratingComputedInDatabaseMatchesShipUtilTest() throws Exception {
+        for (ShipInfoTest ship : new TestsHelper().getAllShips()) {
+            boolean isUsed = !ship.isUsed;
+            // checkInputData treats a body with only isUsed as empty, so crewSize goes along
+            ShipInfoTest actual = update(ship.id, "{\"isUsed\": " + isUsed + ", \"crewSize\": " + ship.crewSize + "}");
+            double expected = ShipUtil.calculateRating(ship.speed, new Date(ship.prodDate), isUsed);
+            assertEquals("Wrong rating for ship " + ship.id, expected, actual.rating);
+
+            double speed = Math.round((1 - ship.speed) * 100) / 100.0;
+            actual = update(ship.id, "{\"speed\": " + speed + "}");
+            expected = ShipUtil.calculateRating(speed, new Date(ship.prodDate), isUsed);
+            assertEquals("Wrong rating for ship " + ship.id + " with new speed", expected, actual.rating);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.ShipAggregates;
+import com.space.service.ShipFilter;
+import com.space.service.ShipService;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class StatsTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private ShipAggregates shipAggregates;
+    @Autowired
+    private ShipService shipService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private DataSource dataSource;
+
+    private JsonNode getStats(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readTree(content);
+    }
+
+    private JsonNode queriedStats() throws Exception {
+        ShipFilter all = new ShipFilter(null, null, null, null, null, null, null, null, null, null, null, null);
+        return mapper.readTree(objectMapper.writeValueAsString(shipService.stats(all)));
+    }
+
+    @Test
+    public void unfilteredStatsMatchShips() throws Exception {
+        assertTrue(shipAggregates.isEnabled());
+        List<ShipInfoTest> ships = testsHelper.getAllShips();
+        JsonNode stats = getStats("/rest/ships/stats");
+
+        assertEquals("Wrong total", ships.size(), stats.at("/total/count").asInt());
+        double minSpeed = ships.stream().mapToDouble(s -> s.speed).min().getAsDouble();
+        double maxCrewSize = ships.stream().mapToInt(s -> s.crewSize).max().getAsInt();
+        double avgRating = ships.stream().mapToDouble(s -> s.rating).average().getAsDouble();
+        assertEquals("Wrong min speed", minSpeed, stats.at("/total/speed/min").asDouble());
+        assertEquals("Wrong max crewSize", maxCrewSize, stats.at("/total/crewSize/max").asDouble());
+        assertTrue("Wrong avg rating", Math.abs(avgRating - stats.at("/total/rating/avg").asDouble()) < 1e-9);
+
+        long military = ships.stream().filter(s -> s.shipType == ShipType.MILITARY).count();
+        for (JsonNode facet : stats.get("shipTypes")) {
+            if ("MILITARY".equals(facet.get("value").asText())) {
+                assertEquals("Wrong MILITARY count", military, facet.get("count").asLong());
+            }
+        }
+        assertSameStats(queriedStats(), stats);
+    }
+
+    @Test
+    public void filteredStatsUseSameFilters() throws Exception {
+        JsonNode stats = getStats("/rest/ships/stats?shipType=MILITARY&minSpeed=0.3");
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByShipType(ShipType.MILITARY,
+                testsHelper.getShipInfosByMinSpeed(0.3, testsHelper.getAllShips()));
+
+        assertEquals("Wrong total", expected.size(), stats.at("/total/count").asInt());
+        assertEquals("Other ship types counted", 1, stats.get("shipTypes").size());
+        long histogram = 0;
+        for (JsonNode year : stats.get("years")) histogram += year.get("count").asLong();
+        assertEquals("Year histogram does not add up", (long) expected.size(), histogram);
+
+        JsonNode none = getStats("/rest/ships/stats?shipType=UNKNOWN");
+        assertEquals("Unknown shipType matched", 0, none.at("/total/count").asInt());
+        assertTrue(none.at("/total/speed/min").isNull());
+    }
+
+    @Test
+    public void aggregatesFollowWrites() throws Exception {
+        mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Stats\", \"planet\": \"Pluto\", \"shipType\": \"MERCHANT\", " +
+                        "\"prodDate\": 32998274577071, \"speed\": 0.01, \"crewSize\": 9999}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.99, \"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/4")).andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/batch/delete")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[5, 6]"))
+                .andExpect(status().isOk());
+
+        JsonNode stats = getStats("/rest/ships/stats");
+        assertEquals("Wrong min speed", 0.01, stats.at("/total/speed/min").asDouble());
+        assertEquals("Wrong max speed", 0.99, stats.at("/total/speed/max").asDouble());
+        assertSameStats(queriedStats(), stats);
+    }
+
+    @Test
+    public void olderWritesReportedLastAreDropped() throws Exception {
+        Ship updated = new Ship(shipService.findById(3L));
+        Ship deleted = new Ship(shipService.findById(4L));
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.99, \"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/4")).andExpect(status().isOk());
+        // afterCommit callbacks of earlier writes running after those of later ones
+        shipAggregates.shipSaved(updated);
+        shipAggregates.shipSaved(deleted);
+
+        assertSameStats(queriedStats(), getStats("/rest/ships/stats"));
+    }
+
+    @Test
+    public void planetsDifferingInCaseShareAFacet() throws Exception {
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"PLUTO\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/4")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"pluto\"}"))
+                .andExpect(status().isOk());
+
+        JsonNode stats = getStats("/rest/ships/stats");
+        int plutos = 0;
+        for (JsonNode facet : stats.get("planets")) {
+            if (facet.get("value").asText().equalsIgnoreCase("pluto")) {
+                plutos++;
+                assertEquals("Wrong spelling", "PLUTO", facet.get("value").asText());
+            }
+        }
+        assertEquals("Pluto facets", 1, plutos);
+        assertSameStats(queriedStats(), stats);
+    }
+
+    // Ship cannot load such a row, but the grouped query still sees it
+    @Test
+    public void averagesSkipMissingValues() throws Exception {
+        new JdbcTemplate(dataSource).update("INSERT INTO ship (name, planet, shipType, prodDate, isUsed) " +
+                "VALUES ('Blank', 'Pluto', 'MERCHANT', '3000-01-01', false)");
+        List<ShipInfoTest> ships = testsHelper.getAllShips();
+
+        JsonNode stats = queriedStats();
+        assertEquals("Wrong total", ships.size() + 1, stats.at("/total/count").asInt());
+        double avgRating = ships.stream().mapToDouble(s -> s.rating).average().getAsDouble();
+        double avgCrewSize = ships.stream().mapToInt(s -> s.crewSize).average().getAsDouble();
+        assertTrue("Wrong avg rating", Math.abs(avgRating - stats.at("/total/rating/avg").asDouble()) < 1e-9);
+        assertTrue("Wrong avg crewSize", Math.abs(avgCrewSize - stats.at("/total/crewSize/avg").asDouble()) < 1e-9);
+    }
+
+    // sums are added up in a different order than the database's, so averages may differ in the last digits
+    private static void assertSameStats(JsonNode expected, JsonNode actual) {
+        if (expected.isNumber() && expected.isFloatingPointNumber()) {
+            assertTrue(expected + " != " + actual, Math.abs(expected.asDouble() - actual.asDouble()) < 1e-9);
+        } else if (expected.isContainerNode()) {
+            assertEquals("Different stats shape", expected.size(), actual.size());
+            if (expected.isArray()) {
+                for (int i = 0; i < expected.size(); i++) assertSameStats(expected.get(i), actual.get(i));
+            } else {
+                expected.fieldNames().forEachRemaining(f -> assertSameStats(expected.get(f), actual.get(f)));
+            }
+        } else {
+            assertEquals("Different stats", expected, actual);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.service.ShipTextIndex;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// without the result cache, so every list asks the index for candidates
+@TestPropertySource(properties = {"cosmoport.text-index.enabled=true", "cosmoport.result-cache.enabled=false"})
+public class TextIndexTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+
+    @Autowired
+    private ShipTextIndex shipTextIndex;
+    @Autowired
+    private DataSource dataSource;
+
+    private List<ShipInfoTest> getShips(String url) throws Exception {
+        String content = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, typeReference);
+    }
+
+    @Test
+    public void nameAndPlanetSearchMatchesSubstringSemantics() throws Exception {
+        assertTrue(shipTextIndex.isEnabled());
+        for (String name : new String[]{"Star", "tar", "STAR", "ius", "r I", "zzz"}) {
+            List<ShipInfoTest> expected = testsHelper.getShipInfosByName(name, testsHelper.getAllShips());
+            assertEquals("Wrong result for name=" + name, expected,
+                    getShips("/rest/ships?pageSize=40&name=" + name));
+        }
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPlanet("urn",
+                testsHelper.getShipInfosByName("er", testsHelper.getAllShips()));
+        assertEquals("Wrong result for name and planet", expected,
+                getShips("/rest/ships?pageSize=40&name=er&planet=urn"));
+    }
+
+    @Test
+    public void updatedNameIsFoundByNewTextOnly() throws Exception {
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Quasar Drifter\"}"))
+                .andExpect(status().isOk());
+
+        assertEquals("Renamed ship not found", 1, getShips("/rest/ships?name=Drift").size());
+        assertEquals("Old name still matches", 0, getShips("/rest/ships?name=Orion").size());
+    }
+
+    // a rename committed but not yet applied to the index must not hide the ship
+    @Test
+    public void shipBeingWrittenStaysCandidate() throws Exception {
+        List<Long> ids = Collections.singletonList(1L);
+        shipTextIndex.writing(ids);
+        try {
+            new JdbcTemplate(dataSource).update("UPDATE ship SET name = 'Quasar Drifter' WHERE id = 1");
+            assertEquals("Ship written meanwhile not found", 1, getShips("/rest/ships?name=Drift").size());
+        } finally {
+            shipTextIndex.written(ids);
+        }
+        assertEquals("Index narrows by the applied names again", 0, getShips("/rest/ships?name=Drift").size());
+    }
+}
@@ -0,0 +1,197 @@
+package com.space.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType.H2;
+
+// a primary and two replicas as separate H2 databases, each answering with its own name
+public class ReplicaRoutingDataSourceTest {
+    private EmbeddedDatabase primary;
+    private Node replica1;
+    private Node replica2;
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @Before
+    public void setup() {
+        primary = database("primary");
+        replica1 = new Node(database("replica1"));
+        replica2 = new Node(database("replica2"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ReplicaRoutingDataSource.release();
+        routing.close();
+        primary.shutdown();
+        ((EmbeddedDatabase) replica1.getTargetDataSource()).shutdown();
+        ((EmbeddedDatabase) replica2.getTargetDataSource()).shutdown();
+    }
+
+    // a replica that can be taken down
+    private static class Node extends DelegatingDataSource {
+        volatile boolean down;
+
+        Node(EmbeddedDatabase database) {
+            super(database);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) throw new SQLException("Connection refused");
+            return super.getConnection();
+        }
+    }
+
+    private void route(ReplicaRoutingDataSource.Policy policy, boolean readYourWrites) {
+        routing = new ReplicaRoutingDataSource(primary, Arrays.asList(replica1, replica2), policy, readYourWrites, 0, 1);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    private static EmbeddedDatabase database(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(H2).build();
+        JdbcTemplate jdbc = new JdbcTemplate(database);
+        jdbc.execute("CREATE TABLE node (name VARCHAR(16))");
+        jdbc.update("INSERT INTO node VALUES (?)", name);
+        return database;
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> jdbc.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private String readWriteNode() {
+        return readWrite.execute(status -> jdbc.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private static String node(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT name FROM node")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void readOnlyTransactionsRoundRobinOverReplicas() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, false);
+        assertEquals("replica1", readOnlyNode());
+        assertEquals("replica2", readOnlyNode());
+        assertEquals("replica1", readOnlyNode());
+        assertEquals(3, routing.getReplicaReads());
+    }
+
+    @Test
+    public void writesStayOnPrimary() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, false);
+        assertEquals("primary", readWriteNode());
+        assertEquals("primary", jdbc.queryForObject("SELECT name FROM node", String.class));
+        assertEquals("replica1", readOnlyNode());
+    }
+
+    @Test
+    public void readsAfterWriteGoToPrimary() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, true);
+        assertEquals("replica1", readOnlyNode());
+        readWrite.execute(status -> jdbc.update("UPDATE node SET name = name"));
+        assertEquals("primary", readOnlyNode());
+
+        ReplicaRoutingDataSource.release();
+        assertEquals("replica2", readOnlyNode());
+    }
+
+    @Test
+    public void stickToPrimaryPinsReads() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, false);
+        ReplicaRoutingDataSource.stickToPrimary();
+        assertEquals("primary", readOnlyNode());
+        assertEquals(1, routing.getPrimaryReads());
+        assertEquals(0, routing.getReplicaReads());
+    }
+
+    @Test
+    public void leastBusyAvoidsReplicaInUse() {
+        route(ReplicaRoutingDataSource.Policy.LEAST_BUSY, false);
+        String nodes = readOnly.execute(status -> {
+            try (Connection first = routing.getConnection()) {
+                String firstNode = node(first);
+                try (Connection second = routing.getConnection()) {
+                    return firstNode + "," + node(second);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertEquals("replica1,replica2", nodes);
+    }
+
+    @Test
+    public void unhealthyReplicaIsSkipped() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, false);
+        replica1.down = true;
+        routing.checkHealth();
+        assertEquals(1, routing.getHealthyReplicaCount());
+        assertEquals("replica2", readOnlyNode());
+        assertEquals("replica2", readOnlyNode());
+
+        replica1.down = false;
+        routing.checkHealth();
+        assertEquals(2, routing.getHealthyReplicaCount());
+    }
+
+    @Test
+    public void failedReplicaFallsBackWithoutHealthCheck() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, false);
+        replica1.down = true;
+        replica2.down = true;
+        assertEquals("primary", readOnlyNode());
+        assertEquals(0, routing.getHealthyReplicaCount());
+        assertEquals(2, routing.getFailovers());
+    }
+
+    // the replicas never receive the primary's writes, so they lag behind it for good
+    @Test
+    public void laggingReplicaIsBypassedOnlyByOnPrimary() {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, true);
+        readWrite.execute(status -> jdbc.update("UPDATE node SET name = 'written'"));
+        assertEquals("written", readOnlyNode());
+
+        // the next request, from another client, reads from before the write
+        ReplicaRoutingDataSource.release();
+        assertEquals("replica1", readOnlyNode());
+        assertEquals("written", ReplicaRoutingDataSource.onPrimary(this::readOnlyNode));
+        assertFalse("onPrimary left the thread pinned", ReplicaRoutingDataSource.isStickToPrimary());
+        assertEquals("replica2", readOnlyNode());
+    }
+
+    @Test(expected = SQLFeatureNotSupportedException.class)
+    public void explicitCredentialsAreNotSupported() throws SQLException {
+        route(ReplicaRoutingDataSource.Policy.ROUND_ROBIN, false);
+        routing.getConnection("sa", "");
+    }
+}
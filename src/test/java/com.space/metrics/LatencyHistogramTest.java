@@ -0,0 +1,53 @@
+package com.space.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverValuesWithoutGaps() {
+        long expectedLower = 0;
+        for (long micros = 0; micros < 1 << 20; micros++) {
+            int i = LatencyHistogram.index(micros);
+            assertTrue("Value " + micros + " above its bucket", micros <= LatencyHistogram.upperBound(i));
+            if (i > 0) assertEquals("Gap before " + micros, LatencyHistogram.upperBound(i - 1) + 1, expectedLower);
+            if (micros == LatencyHistogram.upperBound(i)) expectedLower = micros + 1;
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] micros = new long[100000];
+        for (int i = 0; i < micros.length; i++) {
+            // log-normal around 2ms, like request latencies
+            micros[i] = (long) Math.exp(Math.log(2000) + random.nextGaussian());
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros[i]));
+        }
+        Arrays.sort(micros);
+
+        for (double q : new double[]{0.5, 0.95, 0.99}) {
+            double exact = micros[(int) Math.ceil(q * micros.length) - 1] / 1000.0;
+            double actual = histogram.getPercentileMillis(q);
+            assertTrue("p" + q + " " + actual + " below " + exact, actual >= exact);
+            assertTrue("p" + q + " " + actual + " too far above " + exact, actual <= exact * 1.125 + 0.001);
+        }
+        assertEquals(micros[micros.length - 1] / 1000.0, histogram.getMaxMillis(), 0);
+        assertEquals(micros.length, histogram.getCount());
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(0.99), 0);
+        assertEquals(0, histogram.getMeanMillis(), 0);
+    }
+}
@@ -0,0 +1,29 @@
+package com.space.metrics;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogDiscardPolicyTest {
+
+    @Test
+    public void discardsAndCountsUpToThreshold() {
+        LogDiscardPolicy policy = new LogDiscardPolicy(Level.INFO);
+        long background = Thread.currentThread().getId() + 1;
+        long discarded = LogDiscardPolicy.getDiscardedCount();
+
+        assertEquals(EventRoute.DISCARD, policy.getRoute(background, Level.DEBUG));
+        assertEquals(EventRoute.DISCARD, policy.getRoute(background, Level.INFO));
+        assertEquals(EventRoute.ENQUEUE, policy.getRoute(background, Level.WARN));
+        assertEquals(EventRoute.ENQUEUE, policy.getRoute(background, Level.ERROR));
+        assertEquals(discarded + 2, LogDiscardPolicy.getDiscardedCount());
+    }
+
+    @Test
+    public void backgroundThreadLogsSynchronously() {
+        LogDiscardPolicy policy = new LogDiscardPolicy(Level.INFO);
+        assertEquals(EventRoute.SYNCHRONOUS, policy.getRoute(Thread.currentThread().getId(), Level.WARN));
+    }
+}
@@ -0,0 +1,120 @@
+package com.space.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class QueryCoalescerTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    // a query that runs until released
+    private Supplier<Long> blockingQuery(long result) {
+        return () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        };
+    }
+
+    private static void awaitWaiting(QueryCoalescer coalescer, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.getWaiting() < count) {
+            if (System.nanoTime() > deadline) fail("Requests did not wait for the query in flight");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void identicalLoadsShareOneExecution() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true, 10_000);
+        Future<Long> leader = executor.submit(() -> coalescer.load("count:Mars", blockingQuery(42)));
+        started.await();
+        List<Future<Long>> followers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            followers.add(executor.submit(() -> coalescer.load("count:Mars", blockingQuery(-1))));
+        }
+        awaitWaiting(coalescer, 8);
+        assertEquals("Other keys must not wait", 7L, (long) coalescer.load("count:Earth", () -> 7L));
+
+        release.countDown();
+        assertEquals(42L, (long) leader.get());
+        for (Future<Long> follower : followers) assertEquals(42L, (long) follower.get());
+        assertEquals("Identical queries ran more than once", 1, runs.get());
+        assertEquals(8, coalescer.getCollapsed());
+        assertEquals(2, coalescer.getExecutions());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    public void waitingIsBoundedByMaxWait() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true, 20);
+        executor.submit(() -> coalescer.load("count:Mars", blockingQuery(42)));
+        started.await();
+
+        assertEquals(7L, (long) coalescer.load("count:Mars", () -> 7L));
+        assertEquals(1, coalescer.getTimeouts());
+        assertEquals(0, coalescer.getCollapsed());
+    }
+
+    @Test
+    public void writeDetachesQueriesInFlight() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true, 10_000);
+        executor.submit(() -> coalescer.load("count:Mars", blockingQuery(42)));
+        started.await();
+
+        coalescer.shipDeleted(1L);
+        assertEquals("Result read before the write was shared", 43L, (long) coalescer.load("count:Mars", () -> 43L));
+        assertEquals(0, coalescer.getCollapsed());
+    }
+
+    @Test
+    public void failureIsShared() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true, 10_000);
+        IllegalStateException failure = new IllegalStateException("database down");
+        Supplier<Long> failing = () -> {
+            blockingQuery(0).get();
+            throw failure;
+        };
+        executor.submit(() -> coalescer.load("count:Mars", failing));
+        started.await();
+        Future<Long> follower = executor.submit(() -> coalescer.load("count:Mars", blockingQuery(-1)));
+        awaitWaiting(coalescer, 1);
+
+        release.countDown();
+        try {
+            follower.get();
+            fail("Follower did not receive the failure");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(1, runs.get());
+    }
+}
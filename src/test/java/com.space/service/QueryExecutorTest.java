@@ -0,0 +1,141 @@
+package com.space.service;
+
+import com.space.datasource.ReplicaRoutingDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// thread-per-task mode, with a cached pool standing in for virtual threads
+public class QueryExecutorTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger started = new AtomicInteger();
+    private QueryExecutor executor;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        ReplicaRoutingDataSource.release();
+        if (executor != null) executor.shutdown();
+    }
+
+    private QueryExecutor threadPerTask(int concurrency, int queueCapacity) {
+        executor = new QueryExecutor(Executors.newCachedThreadPool(), concurrency, queueCapacity, 1000);
+        return executor;
+    }
+
+    // a query that runs until released
+    private Runnable blockingQuery() {
+        return () -> {
+            started.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private static void await(Future<?> task) throws Exception {
+        task.get(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.get() < count) {
+            if (System.nanoTime() > deadline) fail("Queries did not start");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void semaphoreBoundsRunningAndWaitingQueries() throws Exception {
+        QueryExecutor executor = threadPerTask(2, 1);
+        Future<?> first = executor.submit(blockingQuery());
+        Future<?> second = executor.submit(blockingQuery());
+        awaitStarted(2);
+        Future<?> third = executor.submit(blockingQuery());
+        assertEquals(2, executor.getActive());
+        assertEquals(1, executor.getQueued());
+        assertEquals("A query ran past the semaphore", 2, started.get());
+
+        try {
+            executor.submit(blockingQuery());
+            fail("Query admitted beyond the queue capacity");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, executor.getRejected());
+        }
+
+        release.countDown();
+        await(first);
+        await(second);
+        await(third);
+        assertEquals(3, executor.getCompleted());
+        assertEquals(0, executor.getActive());
+        assertEquals(0, executor.getQueued());
+    }
+
+    @Test
+    public void timedOutQueryDoesNotRun() throws Exception {
+        QueryExecutor executor = threadPerTask(1, 1);
+        Future<?> blocking = executor.submit(blockingQuery());
+        awaitStarted(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        Future<?> waiting = executor.submit(() -> ran.set(true));
+        executor.timedOut(waiting);
+
+        // its place in the queue is free again while the first query still runs
+        assertEquals(0, executor.getQueued());
+        Future<?> next = executor.submit(() -> { });
+        release.countDown();
+        await(blocking);
+        await(next);
+        assertFalse("Timed out query ran", ran.get());
+        assertEquals(1, executor.getTimeouts());
+        assertEquals(0, executor.getActive());
+        assertEquals(0, executor.getQueued());
+    }
+
+    @Test
+    public void queriesTimingOutInTheQueueDoNotUseItUp() throws Exception {
+        QueryExecutor executor = threadPerTask(1, 2);
+        Future<?> blocking = executor.submit(blockingQuery());
+        awaitStarted(1);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            executor.timedOut(executor.submit(ran::incrementAndGet));
+            executor.timedOut(executor.submit(ran::incrementAndGet));
+        }
+        assertEquals(0, executor.getQueued());
+
+        release.countDown();
+        await(blocking);
+        await(executor.submit(() -> { }));
+        assertEquals("Timed out queries ran", 0, ran.get());
+        assertEquals(0, executor.getActive());
+    }
+
+    @Test
+    public void queryKeepsSubmittersReadRouting() throws Exception {
+        QueryExecutor executor = threadPerTask(1, 0);
+        AtomicBoolean pinned = new AtomicBoolean();
+        ReplicaRoutingDataSource.stickToPrimary();
+        await(executor.submit(() -> pinned.set(ReplicaRoutingDataSource.isStickToPrimary())));
+        assertTrue("Pin not carried to the query thread", pinned.get());
+
+        ReplicaRoutingDataSource.release();
+        await(executor.submit(() -> pinned.set(ReplicaRoutingDataSource.isStickToPrimary())));
+        assertFalse("Pin left on the query thread", pinned.get());
+    }
+}
@@ -0,0 +1,94 @@
+package com.space.util;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShipUtilTest {
+    private static final long FROM = midnight(1800, Calendar.JANUARY, 1);
+    private static final long TO = midnight(3200, Calendar.JANUARY, 1);
+
+    @Test
+    public void yearTableMatchesCalendarTest() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long millis = FROM + (long) (random.nextDouble() * (TO - FROM));
+            assertEquals(calendarYear(millis), ShipUtil.getYear(millis));
+            assertEquals(calendarFirstDayOfYear(millis), ShipUtil.getFirstDayOfYearMillis(millis));
+        }
+    }
+
+    @Test
+    public void yearBoundariesTest() {
+        for (int year = 1899; year <= 3102; year++) {
+            long start = midnight(year, Calendar.JANUARY, 1);
+            for (long millis : new long[]{start - 1, start, start + 1}) {
+                assertEquals(calendarYear(millis), ShipUtil.getYear(millis));
+                assertEquals(calendarFirstDayOfYear(millis), ShipUtil.getFirstDayOfYearMillis(millis));
+            }
+        }
+    }
+
+    @Test
+    public void ratingMatchesCalendarTest() {
+        Random random = new Random(7);
+        int n = 10000;
+        double[] speeds = new double[n];
+        int[] years = new int[n];
+        boolean[] used = new boolean[n];
+        double[] ratings = new double[n];
+        Date[] dates = new Date[n];
+        for (int i = 0; i < n; i++) {
+            speeds[i] = Math.round((0.01 + random.nextDouble() * 0.98) * 100) / 100.0;
+            dates[i] = new Date(midnight(2700 + random.nextInt(220), random.nextInt(12), 1 + random.nextInt(28)));
+            years[i] = ShipUtil.getYear(dates[i].getTime());
+            used[i] = random.nextBoolean();
+        }
+        ShipUtil.calculateRatings(speeds, years, used, ratings);
+        for (int i = 0; i < n; i++) {
+            double expected = calendarRating(speeds[i], dates[i], used[i]);
+            assertEquals(Double.doubleToLongBits(expected),
+                    Double.doubleToLongBits(ShipUtil.calculateRating(speeds[i], dates[i], used[i])));
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(ratings[i]));
+        }
+    }
+
+    // local midnight starting the given day
+    private static long midnight(int year, int month, int day) {
+        return new GregorianCalendar(year, month, day).getTimeInMillis();
+    }
+
+    // the Calendar based implementations the year table replaced
+    private static int calendarYear(long millis) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        return cal.get(Calendar.YEAR);
+    }
+
+    private static long calendarFirstDayOfYear(long millis) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeZone(TimeZone.getDefault());
+        cal.setTimeInMillis(millis);
+        cal.setLenient(false);
+        cal.set(Calendar.MONTH, Calendar.JANUARY);
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private static double calendarRating(double speed, Date prodDate, boolean isUsed) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(prodDate.getTime());
+        double k = isUsed ? 0.5 : 1;
+        return Math.round(80 * speed * k / (3019 - cal.get(Calendar.YEAR) + 1) * 100) / 100.0;
+    }
+}
@@ -5,15 +5,22 @@ CREATE TABLE ship
     id       BIGINT(20)  NOT NULL AUTO_INCREMENT,
     name     VARCHAR(50) NULL,
     planet   VARCHAR(50) NULL,
-    shipType VARCHAR(9)  NULL,
+    shipType ENUM ('TRANSPORT', 'MILITARY', 'MERCHANT') NULL,
     prodDate date        NULL,
     isUsed   BIT(1)      NULL,
     speed    DOUBLE      NULL,
     crewSize INT(4)      NULL,
     rating   DOUBLE      NULL,
+    version  BIGINT      NOT NULL DEFAULT 0,
     PRIMARY KEY (id)
 );
 
+CREATE INDEX ship_speed_idx ON ship (speed);
+CREATE INDEX ship_prod_date_idx ON ship (prodDate);
+CREATE INDEX ship_rating_idx ON ship (rating);
+CREATE INDEX ship_crew_size_idx ON ship (crewSize);
+CREATE INDEX ship_type_used_rating_idx ON ship (shipType, isUsed, rating);
+
 INSERT INTO ship(name, planet, shipType, prodDate, isUsed, speed, crewSize, rating)
 VALUES ('Orion III', 'Mars', 'MERCHANT', '2995-01-01', true, 0.82, 617, 1.31)
      , ('Daedalus', 'Jupiter', 'MERCHANT', '3001-01-01', true, 0.94, 1619, 1.98)